@@ -0,0 +1,107 @@
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fetches HTML without blocking a thread per fetch, the asynchronous
+ * counterpart of {@link HTMLFetcher#fetchHTML(URL, int)}.
+ *
+ * <p>Fetches go through one {@link HttpClient}, which keeps connections to
+ * each host open and reuses them for later fetches of that host, and speaks
+ * HTTP/2 to hosts that offer it, many fetches sharing one connection. The
+ * client waits on all its connections with one selector thread and completes
+ * fetches on a few threads of its own, so thousands of fetches can be in
+ * flight at once.</p>
+ */
+public class AsyncFetcher {
+	/** The seconds to wait to connect to a host, or for a response. */
+	public static final int TIMEOUT = 30;
+
+	/** The default number of threads that complete fetches. */
+	public static final int THREADS = 2;
+
+	private final HttpClient client;
+
+	/**
+	 * Creates a fetcher with the default number of threads.
+	 *
+	 * @see #AsyncFetcher(int)
+	 */
+	public AsyncFetcher() {
+		this(THREADS);
+	}
+
+	/**
+	 * Creates a fetcher.
+	 * @param threads the number of threads that complete fetches
+	 */
+	public AsyncFetcher(int threads) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+			Thread thread = new Thread(runnable, "AsyncFetcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NEVER)
+				.connectTimeout(Duration.ofSeconds(TIMEOUT))
+				.executor(executor)
+				.build();
+	}
+
+	/**
+	 * Fetches a url. If the response is HTML, completes with the HTML as a
+	 * single String. If the response is a redirect and redirects is greater
+	 * than 0, completes with the result of the redirect. Otherwise completes
+	 * with null.
+	 *
+	 * @param url the url to fetch
+	 * @param redirects the number of times to follow a redirect response
+	 * @return the html, or null if the response was not html
+	 * @see HTMLFetcher#fetchHTML(URL, int)
+	 */
+	public CompletableFuture<String> fetchHTML(URL url, int redirects) {
+		HttpRequest request;
+		try {
+			request = HttpRequest.newBuilder(url.toURI())
+					.timeout(Duration.ofSeconds(TIMEOUT))
+					.GET()
+					.build();
+		} catch(URISyntaxException | IllegalArgumentException e) {
+			CompletableFuture<String> failed = new CompletableFuture<String>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+		return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenCompose(response -> {
+			Map<String, List<String>> headers = response.headers().map();
+			if(HTMLFetcher.isHTML(headers) && response.statusCode() == 200) {
+				return CompletableFuture.completedFuture(response.body());
+			}
+			if(HTMLFetcher.isRedirect(headers) && redirects > 0) {
+				try {
+					URI location = url.toURI().resolve(headers.get("Location").get(0));
+					return fetchHTML(location.toURL(), redirects - 1);
+				} catch(Exception e) {
+					return CompletableFuture.completedFuture(null);
+				}
+			}
+			return CompletableFuture.completedFuture(null);
+		});
+	}
+
+	/**
+	 * @see #fetchHTML(URL, int)
+	 */
+	public CompletableFuture<String> fetchHTML(URL url) {
+		return fetchHTML(url, 0);
+	}
+}
@@ -0,0 +1,95 @@
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter of strings. Each string sets a few bits of one
+ * bit array, chosen by double hashing, so it takes a fixed number of bits per
+ * expected string however long the strings are. A string that was added is
+ * always found; a string that was not is wrongly found at about the false
+ * positive rate the filter was sized for. Bits are set by compare-and-set on
+ * an {@link AtomicLongArray}, so adding never locks.
+ */
+public class BloomFilter {
+	private final AtomicLongArray bits;
+	private final long size;
+	private final int hashes;
+
+	/**
+	 * Creates a filter sized for a number of strings and a false positive rate.
+	 * @param expected the number of strings expected to be added
+	 * @param rate the false positive rate wanted once they are, such as 0.01
+	 */
+	public BloomFilter(long expected, double rate) {
+		long bits = (long) Math.ceil(-Math.max(expected, 1) * Math.log(rate) / (Math.log(2) * Math.log(2)));
+		int words = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bits + 63) / 64));
+		this.bits = new AtomicLongArray(words);
+		this.size = words * 64L;
+		this.hashes = Math.max(1, (int) Math.round((double) size / Math.max(expected, 1) * Math.log(2)));
+	}
+
+	/**
+	 * Adds a string.
+	 * @param element the string to add
+	 * @return true if the string was not found before, false if it may have been added already
+	 */
+	public boolean add(String element) {
+		long[] hash = hash(element);
+		boolean added = false;
+		for(int i = 0; i < hashes; i++) {
+			long bit = Math.floorMod(hash[0] + i * hash[1], size);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long current;
+			while(((current = bits.get(word)) & mask) == 0) {
+				if(bits.compareAndSet(word, current, current | mask)) {
+					added = true;
+					break;
+				}
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Tells if a string may have been added.
+	 * @param element the string
+	 * @return false if the string was never added, true if it may have been
+	 */
+	public boolean mightContain(String element) {
+		long[] hash = hash(element);
+		for(int i = 0; i < hashes; i++) {
+			long bit = Math.floorMod(hash[0] + i * hash[1], size);
+			if((bits.get((int) (bit >>> 6)) & 1L << bit) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * returns the number of bits of the filter
+	 * @return the size in bits
+	 */
+	public long bits() {
+		return size;
+	}
+
+	/**
+	 * returns two independent 64-bit hashes of a string, FNV-1a over its UTF-8
+	 * bytes and a mix of that
+	 */
+	private static long[] hash(String element) {
+		long h = 0xcbf29ce484222325L;
+		for(byte b : element.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b & 0xFF;
+			h *= 0x100000001b3L;
+		}
+		long g = h;
+		g ^= g >>> 33;
+		g *= 0xff51afd7ed558ccdL;
+		g ^= g >>> 33;
+		g *= 0xc4ceb9fe1a85ec53L;
+		g ^= g >>> 33;
+		return new long[] { h, g | 1 };
+	}
+}
@@ -0,0 +1,97 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the small indexes workers build for each file or page and adds
+ * them to a shared index in batches. Each worker thread adds its local
+ * indexes to a staging index of its own, without any lock, and only adds the
+ * staging index to the shared index once it holds enough postings. The shared
+ * index's {@link InvertedIndex#addAll(InvertedIndex)} then runs once per batch
+ * instead of once per document, so its lock is taken once per batch, and every
+ * word is looked up in it once per batch however many documents it was in.
+ *
+ * <p>Staged postings are not searchable until they are flushed, so
+ * {@link #flushAll()} must be called once the workers are done.</p>
+ */
+public class BulkAdder {
+	/** The default number of postings a worker stages before adding them. */
+	public static final int DEFAULT_THRESHOLD = 50000;
+
+	private final InvertedIndex index;
+	private final int threshold;
+	private final ThreadLocal<Staging> local;
+	private final ConcurrentLinkedQueue<Staging> stagings;
+
+	/**
+	 * Creates an adder with the default threshold.
+	 * @param index the shared index to add to
+	 */
+	public BulkAdder(InvertedIndex index) {
+		this(index, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Creates an adder.
+	 * @param index the shared index to add to
+	 * @param threshold the number of postings a worker stages before adding them
+	 */
+	public BulkAdder(InvertedIndex index, int threshold) {
+		this.index = index;
+		this.threshold = threshold;
+		this.stagings = new ConcurrentLinkedQueue<Staging>();
+		this.local = ThreadLocal.withInitial(() -> {
+			Staging staging = new Staging();
+			stagings.add(staging);
+			return staging;
+		});
+	}
+
+	/**
+	 * stages the words of a local index, adding the staged words to the
+	 * shared index if there are enough of them. the local index must not be
+	 * used afterwards.
+	 * @param other the index of one document
+	 */
+	public void add(InvertedIndex other) {
+		Staging staging = local.get();
+		synchronized(staging) {
+			staging.index.addAll(other);
+			for(String location : other.getLocations()) {
+				staging.postings += other.getTotal(location);
+			}
+			if(staging.postings >= threshold) {
+				staging.flush();
+			}
+		}
+	}
+
+	/**
+	 * adds the staged words of every worker to the shared index
+	 */
+	public void flushAll() {
+		for(Staging staging : stagings) {
+			synchronized(staging) {
+				staging.flush();
+			}
+		}
+	}
+
+	/**
+	 * The words one worker has staged.
+	 */
+	private class Staging {
+		private InvertedIndex index = new InvertedIndex();
+		private long postings = 0;
+
+		/**
+		 * adds the staged words to the shared index and starts a new stage,
+		 * since the shared index may keep the staged postings
+		 */
+		private void flush() {
+			if(postings > 0) {
+				BulkAdder.this.index.addAll(index);
+				index = new InvertedIndex();
+				postings = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,539 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An inverted index that interns words and locations to int ids and stores the
+ * positions of every word as delta-encoded primitive int arrays, instead of a
+ * boxed {@link Integer} inside a {@link TreeSet} node per position.
+ *
+ * <p>Removing a location only marks its id in a tombstone bitset, which
+ * searches check as they walk the postings. Once more than
+ * {@link #PURGE_RATIO} of the location ids are tombstones the postings are
+ * purged: the removed locations are dropped from every posting list and the
+ * remaining ids renumbered, so an index that keeps removing and adding
+ * locations does not keep growing.</p>
+ */
+public class CompactInvertedIndex extends InvertedIndex {
+	/** The fraction of location ids that may be removed before the postings are purged. */
+	public static final double PURGE_RATIO = 0.25;
+
+	private final TreeMap<String, Integer> termIds;
+	private final ArrayList<Postings> postings;
+	private final HashMap<String, Integer> locationIds;
+	private final ArrayList<String> locations;
+	private int[] totals;
+	private final BitSet deleted;
+	private int pending;
+
+	/**
+	 * Initializes the compact inverted index.
+	 */
+	public CompactInvertedIndex() {
+		super();
+		termIds = new TreeMap<String, Integer>();
+		postings = new ArrayList<Postings>();
+		locationIds = new HashMap<String, Integer>();
+		locations = new ArrayList<String>();
+		totals = new int[16];
+		deleted = new BitSet();
+		pending = 0;
+	}
+
+	/**
+	 * Refuses the cache, since partial searches add up counts by location id,
+	 * which the cache does not keep.
+	 */
+	@Override
+	public void setPrefixCache(PrefixCache prefixCache) {
+		throw new UnsupportedOperationException("Compact indexes do not cache prefixes");
+	}
+
+	@Override
+	public void addWord(String word, String document, int position) {
+		int id = locationId(document);
+		if(postingsFor(word).add(id, position)) {
+			totals[id]++;
+		}
+		advanceGeneration();
+	}
+
+	@Override
+	protected ArrayList<SearchResult> exactMatches(TreeSet<String> queryWords) {
+		ScoreAccumulator scores = ScoreAccumulator.get(locations.size());
+		for(String word : queryWords) {
+			Integer id = termIds.get(word);
+			if(id != null) {
+				searchStorer(postings.get(id), scores);
+			}
+		}
+		return scores.results(locations, totals);
+	}
+
+	@Override
+	protected ArrayList<SearchResult> partialMatches(TreeSet<String> queryWords) {
+		ScoreAccumulator scores = ScoreAccumulator.get(locations.size());
+		for(String word : queryWords) {
+			for(Map.Entry<String, Integer> entry : termIds.tailMap(word).entrySet()) {
+				if(!entry.getKey().startsWith(word)) {
+					break;
+				}
+				searchStorer(postings.get(entry.getValue()), scores);
+			}
+		}
+		return scores.results(locations, totals);
+	}
+
+	/**
+	 * adds the count of every document in the postings to its score
+	 * @param list the postings of one word
+	 * @param scores the counts summed so far, by location id
+	 */
+	private void searchStorer(Postings list, ScoreAccumulator scores) {
+		for(int i = 0; i < list.size; i++) {
+			if(!deleted.get(list.documents[i])) {
+				scores.add(list.documents[i], list.counts[i]);
+			}
+		}
+	}
+
+	@Override
+	public void addAll(InvertedIndex other) {
+		if(other instanceof CompactInvertedIndex) {
+			CompactInvertedIndex local = (CompactInvertedIndex) other;
+			for(String word : local.termIds.keySet()) {
+				Postings from = local.postings.get(local.termIds.get(word));
+				Postings to = postingsFor(word);
+				for(int i = 0; i < from.size; i++) {
+					if(local.deleted.get(from.documents[i])) {
+						continue;
+					}
+					int document = locationId(local.locations.get(from.documents[i]));
+					int position = 0;
+					for(int j = 0; j < from.counts[i]; j++) {
+						position += from.gaps[i][j];
+						if(to.add(document, position)) {
+							totals[document]++;
+						}
+					}
+				}
+			}
+		} else {
+			InvertedIndex local = other.asTree();
+			for(String word : local.getWords()) {
+				Postings to = postingsFor(word);
+				for(String location : local.getLocations(word)) {
+					int document = locationId(location);
+					for(int position : local.getPositions(word, location)) {
+						if(to.add(document, position)) {
+							totals[document]++;
+						}
+					}
+				}
+			}
+		}
+		advanceGeneration();
+	}
+
+	/**
+	 * Marks the ids of the locations as tombstones and forgets the locations,
+	 * so adding one of them again gives it a new id, and purges the postings if
+	 * enough ids are tombstones.
+	 */
+	@Override
+	public void removeAll(Collection<String> locations) {
+		for(String location : new HashSet<String>(locations)) {
+			Integer id = locationIds.remove(location);
+			if(id != null) {
+				deleted.set(id);
+				totals[id] = 0;
+				pending++;
+			}
+		}
+		if(pending > this.locations.size() * PURGE_RATIO) {
+			purge();
+		}
+		advanceGeneration();
+	}
+
+	/**
+	 * drops the locations marked as tombstones from every posting list, drops
+	 * the words left without postings and renumbers the remaining locations
+	 */
+	public void purge() {
+		if(pending == 0) {
+			return;
+		}
+		int[] ids = new int[locations.size()];
+		ArrayList<String> live = new ArrayList<String>();
+		int[] counts = new int[Math.max(16, locations.size() - pending)];
+		for(int id = 0; id < locations.size(); id++) {
+			if(deleted.get(id)) {
+				ids[id] = -1;
+			} else {
+				ids[id] = live.size();
+				counts[live.size()] = totals[id];
+				live.add(locations.get(id));
+			}
+		}
+
+		ArrayList<Postings> kept = new ArrayList<Postings>();
+		Iterator<Map.Entry<String, Integer>> words = termIds.entrySet().iterator();
+		while(words.hasNext()) {
+			Map.Entry<String, Integer> word = words.next();
+			Postings list = postings.get(word.getValue());
+			list.retain(ids);
+			if(list.size == 0) {
+				words.remove();
+			} else {
+				word.setValue(kept.size());
+				kept.add(list);
+			}
+		}
+		postings.clear();
+		postings.addAll(kept);
+
+		for(Map.Entry<String, Integer> location : locationIds.entrySet()) {
+			location.setValue(ids[location.getValue()]);
+		}
+		locations.clear();
+		locations.addAll(live);
+		totals = counts;
+		deleted.clear();
+		pending = 0;
+	}
+
+	/**
+	 * returns the postings of a word, interning the word if it is new
+	 * @param word the word in document
+	 * @return the postings of the word
+	 */
+	private Postings postingsFor(String word) {
+		Integer id = termIds.get(word);
+		if(id == null) {
+			id = postings.size();
+			termIds.put(word, id);
+			postings.add(new Postings());
+		}
+		return postings.get(id);
+	}
+
+	/**
+	 * returns the id of a location, interning the location if it is new
+	 * @param location the document
+	 * @return the id of the location
+	 */
+	private int locationId(String location) {
+		Integer id = locationIds.get(location);
+		if(id == null) {
+			id = locations.size();
+			locationIds.put(location, id);
+			locations.add(location);
+			if(id == totals.length) {
+				totals = Arrays.copyOf(totals, totals.length * 2);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * returns the postings of a word without interning it
+	 * @param word the word in document
+	 * @return the postings or null if the word is not stored
+	 */
+	private Postings find(String word) {
+		Integer id = termIds.get(word);
+		return id == null ? null : postings.get(id);
+	}
+
+	/**
+	 * returns the number of locations in the postings that are not tombstones
+	 * @param list the postings of one word, or null
+	 * @return the number of locations left
+	 */
+	private int live(Postings list) {
+		if(list == null) {
+			return 0;
+		}
+		if(pending == 0) {
+			return list.size;
+		}
+		int count = 0;
+		for(int i = 0; i < list.size; i++) {
+			if(!deleted.get(list.documents[i])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void output(Path outputfilepath, boolean pretty) throws IOException {
+		asTree().output(outputfilepath, pretty);
+	}
+
+	@Override
+	public void countWords(Path file) throws IOException {
+		asTree().countWords(file);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return live(find(word)) > 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		Postings list = find(word);
+		Integer document = locationIds.get(location);
+		return list != null && document != null && list.indexOf(document) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		Postings list = find(word);
+		Integer document = locationIds.get(location);
+		if(list == null || document == null) {
+			return false;
+		}
+		int i = list.indexOf(document);
+		return i >= 0 && Arrays.binarySearch(list.decode(i), position) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return pending == 0 ? termIds.size() : getWords().size();
+	}
+
+	@Override
+	public int size(String word) {
+		return live(find(word));
+	}
+
+	@Override
+	public int size(String word, String location) {
+		Postings list = find(word);
+		Integer document = locationIds.get(location);
+		if(list == null || document == null) {
+			return 0;
+		}
+		int i = list.indexOf(document);
+		return i >= 0 ? list.counts[i] : 0;
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		if(pending == 0) {
+			return Collections.unmodifiableNavigableSet(termIds.navigableKeySet());
+		}
+		TreeSet<String> words = new TreeSet<String>();
+		for(Map.Entry<String, Integer> word : termIds.entrySet()) {
+			if(live(postings.get(word.getValue())) > 0) {
+				words.add(word.getKey());
+			}
+		}
+		return Collections.unmodifiableNavigableSet(words);
+	}
+
+	@Override
+	public Set<String> getLocations() {
+		return Collections.unmodifiableSet(new TreeSet<String>(locationIds.keySet()));
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		TreeSet<String> documents = new TreeSet<String>();
+		Postings list = find(word);
+		if(list != null) {
+			for(int i = 0; i < list.size; i++) {
+				if(!deleted.get(list.documents[i])) {
+					documents.add(locations.get(list.documents[i]));
+				}
+			}
+		}
+		return Collections.unmodifiableSet(documents);
+	}
+
+	@Override
+	public SortedSet<Integer> getPositions(String word, String location) {
+		TreeSet<Integer> positions = new TreeSet<Integer>();
+		Postings list = find(word);
+		Integer document = locationIds.get(location);
+		if(list != null && document != null && list.indexOf(document) >= 0) {
+			for(int position : list.decode(list.indexOf(document))) {
+				positions.add(position);
+			}
+		}
+		return Collections.unmodifiableSortedSet(positions);
+	}
+
+	@Override
+	public int getTotal(String location) {
+		Integer document = locationIds.get(location);
+		return document == null ? 0 : totals[document];
+	}
+
+	@Override
+	protected InvertedIndex asTree() {
+		InvertedIndex tree = new InvertedIndex();
+		for(String word : termIds.keySet()) {
+			Postings list = postings.get(termIds.get(word));
+			for(int i = 0; i < list.size; i++) {
+				if(deleted.get(list.documents[i])) {
+					continue;
+				}
+				String location = locations.get(list.documents[i]);
+				for(int position : list.decode(i)) {
+					tree.addWord(word, location, position);
+				}
+			}
+		}
+		return tree;
+	}
+
+	@Override
+	public String toString() {
+		return asTree().toString();
+	}
+
+	/**
+	 * The documents of one word sorted by location id, each with its positions
+	 * stored as the first position followed by the gaps between positions.
+	 */
+	private static class Postings {
+		private int[] documents;
+		private int[] counts;
+		private int[] lasts;
+		private int[][] gaps;
+		private int size;
+
+		public Postings() {
+			documents = new int[1];
+			counts = new int[1];
+			lasts = new int[1];
+			gaps = new int[1][];
+			size = 0;
+		}
+
+		/**
+		 * adds a position to a document
+		 * @param document the location id
+		 * @param position the positioning of the word in the document
+		 * @return true if the position was not stored before
+		 */
+		public boolean add(int document, int position) {
+			int i;
+			if(size > 0 && documents[size - 1] == document) {
+				i = size - 1;
+			} else {
+				i = indexOf(document);
+				if(i < 0) {
+					i = insert(-(i + 1), document);
+				}
+			}
+
+			if(counts[i] == 0 || position > lasts[i]) {
+				append(i, counts[i] == 0 ? position : position - lasts[i]);
+				lasts[i] = position;
+				return true;
+			}
+
+			int[] positions = decode(i);
+			int at = Arrays.binarySearch(positions, position);
+			if(at >= 0) {
+				return false;
+			}
+			at = -(at + 1);
+			int previous = at == 0 ? 0 : positions[at - 1];
+			append(i, 0);
+			System.arraycopy(gaps[i], at, gaps[i], at + 1, counts[i] - at - 1);
+			gaps[i][at] = position - previous;
+			gaps[i][at + 1] = positions[at] - position;
+			return true;
+		}
+
+		/**
+		 * finds a document using binary search
+		 * @param document the location id
+		 * @return the index of the document, or (-(insertion point) - 1)
+		 */
+		public int indexOf(int document) {
+			return Arrays.binarySearch(documents, 0, size, document);
+		}
+
+		/**
+		 * returns the absolute positions of a document
+		 * @param i the index of the document
+		 * @return the positions in increasing order
+		 */
+		public int[] decode(int i) {
+			int[] positions = new int[counts[i]];
+			int position = 0;
+			for(int j = 0; j < counts[i]; j++) {
+				position += gaps[i][j];
+				positions[j] = position;
+			}
+			return positions;
+		}
+
+		/**
+		 * drops the documents without a new id and renumbers the rest, which
+		 * keeps them sorted since the new ids are in the same order
+		 * @param ids the new id of each location id, or -1 to drop it
+		 */
+		public void retain(int[] ids) {
+			int kept = 0;
+			for(int i = 0; i < size; i++) {
+				if(ids[documents[i]] >= 0) {
+					documents[kept] = ids[documents[i]];
+					counts[kept] = counts[i];
+					lasts[kept] = lasts[i];
+					gaps[kept] = gaps[i];
+					kept++;
+				}
+			}
+			Arrays.fill(gaps, kept, size, null);
+			size = kept;
+		}
+
+		private int insert(int at, int document) {
+			if(size == documents.length) {
+				int capacity = size * 2;
+				documents = Arrays.copyOf(documents, capacity);
+				counts = Arrays.copyOf(counts, capacity);
+				lasts = Arrays.copyOf(lasts, capacity);
+				gaps = Arrays.copyOf(gaps, capacity);
+			}
+			System.arraycopy(documents, at, documents, at + 1, size - at);
+			System.arraycopy(counts, at, counts, at + 1, size - at);
+			System.arraycopy(lasts, at, lasts, at + 1, size - at);
+			System.arraycopy(gaps, at, gaps, at + 1, size - at);
+			documents[at] = document;
+			counts[at] = 0;
+			lasts[at] = 0;
+			gaps[at] = new int[2];
+			size++;
+			return at;
+		}
+
+		private void append(int i, int gap) {
+			if(counts[i] == gaps[i].length) {
+				gaps[i] = Arrays.copyOf(gaps[i], counts[i] * 2);
+			}
+			gaps[i][counts[i]++] = gap;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+import java.util.Collections;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures throughput of a thread-safe index under a mixed load: writer threads
+ * keep merging small local indexes the way the file and crawl minions do, while
+ * reader threads keep running exact and partial searches. Then checks that
+ * partial searches through a prefix cache and copies of the index never fail
+ * while locations are updated and removed.
+ */
+public class ConcurrencyBenchmark {
+
+	/** The number of distinct words in the generated documents. */
+	private static final int WORDS = 20000;
+
+	/** The number of words in each generated document. */
+	private static final int LENGTH = 300;
+
+	/**
+	 * Builds one pseudo-random document as a local index.
+	 *
+	 * @param random the source of words
+	 * @param location the name of the document
+	 * @return the local index
+	 */
+	private static InvertedIndex document(Random random, String location) {
+		InvertedIndex local = new InvertedIndex();
+		for(int position = 1; position <= LENGTH; position++) {
+			local.addWord(word(random), location, position);
+		}
+		return local;
+	}
+
+	/**
+	 * Returns a word from a skewed distribution, so a few words are common.
+	 *
+	 * @param random the source of randomness
+	 * @return the word
+	 */
+	private static String word(Random random) {
+		return "w" + (int) Math.pow(WORDS, random.nextDouble());
+	}
+
+	/**
+	 * Runs writers and readers against the index for a fixed time.
+	 *
+	 * @param name the name to report
+	 * @param index the index to load
+	 * @param writers the number of writer threads
+	 * @param readers the number of reader threads
+	 * @param millis how long to run
+	 * @throws InterruptedException
+	 */
+	private static void measure(String name, ThreadSafeInvertedIndex index, int writers, int readers, long millis)
+			throws InterruptedException {
+		Random seed = new Random(212);
+		for(int i = 0; i < 500; i++) {
+			index.addAll(document(seed, "warmup" + i));
+		}
+
+		AtomicLong merges = new AtomicLong();
+		AtomicLong searches = new AtomicLong();
+		AtomicLong searchNanos = new AtomicLong();
+		CountDownLatch start = new CountDownLatch(1);
+		long[] deadline = new long[1];
+		Thread[] threads = new Thread[writers + readers];
+
+		for(int i = 0; i < threads.length; i++) {
+			boolean writer = i < writers;
+			int id = i;
+			threads[i] = new Thread(() -> {
+				Random random = new Random(id);
+				try {
+					start.await();
+				} catch(InterruptedException e) {
+					return;
+				}
+				int count = 0;
+				while(System.nanoTime() < deadline[0]) {
+					if(writer) {
+						index.addAll(document(random, "thread" + id + "-" + count++));
+						merges.incrementAndGet();
+					} else {
+						TreeSet<String> query = new TreeSet<String>();
+						query.add(word(random));
+						query.add(word(random));
+						long before = System.nanoTime();
+						if(random.nextBoolean()) {
+							index.exactSearch(query);
+						} else {
+							index.partialSearch(query);
+						}
+						searchNanos.addAndGet(System.nanoTime() - before);
+						searches.incrementAndGet();
+					}
+				}
+			});
+			threads[i].start();
+		}
+
+		deadline[0] = System.nanoTime() + millis * 1000000L;
+		start.countDown();
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		double seconds = millis / 1000.0;
+		System.out.printf("%-24s %8.0f merges/s %10.0f searches/s %8.3f ms mean search latency%n", name,
+				merges.get() / seconds, searches.get() / seconds,
+				searches.get() == 0 ? 0 : searchNanos.get() / 1e6 / searches.get());
+	}
+
+	/**
+	 * Checks searches against removals: one thread keeps updating and removing
+	 * a document whose words share a prefix with a document that stays, while
+	 * the readers keep running partial searches for that prefix through a
+	 * {@link PrefixCache}, and every other one also copies the whole index as
+	 * output and export do. Reports the reads that threw, which should be none.
+	 *
+	 * @param name the name to report
+	 * @param index the index to check
+	 * @param readers the number of reader threads
+	 * @param millis how long to run
+	 * @throws InterruptedException
+	 */
+	private static void churn(String name, ThreadSafeInvertedIndex index, int readers, long millis)
+			throws InterruptedException {
+		index.setPrefixCache(new PrefixCache());
+		InvertedIndex kept = new InvertedIndex();
+		for(int position = 1; position <= 50; position++) {
+			kept.addWord("p" + position, "kept", position);
+		}
+		index.addAll(kept);
+
+		AtomicLong searches = new AtomicLong();
+		AtomicLong errors = new AtomicLong();
+		long deadline = System.nanoTime() + millis * 1000000L;
+		Thread[] threads = new Thread[readers + 1];
+		threads[0] = new Thread(() -> {
+			while(System.nanoTime() < deadline) {
+				InvertedIndex churned = new InvertedIndex();
+				for(int position = 1; position <= 80; position++) {
+					churned.addWord((position % 2 == 0 ? "p" : "px") + position, "churned", position);
+				}
+				index.update(churned);
+				index.removeAll(Collections.singleton("churned"));
+			}
+		});
+		for(int i = 1; i < threads.length; i++) {
+			boolean copies = i % 2 == 0;
+			threads[i] = new Thread(() -> {
+				TreeSet<String> query = new TreeSet<String>(Collections.singleton("p"));
+				while(System.nanoTime() < deadline) {
+					try {
+						index.partialSearch(query);
+						if(copies) {
+							index.toString();
+						}
+					} catch(RuntimeException e) {
+						errors.incrementAndGet();
+					}
+					searches.incrementAndGet();
+				}
+			});
+		}
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		System.out.printf("%-24s %8d reads during removals, %d failed%n", name, searches.get(), errors.get());
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args optional writer threads, reader threads and seconds, default 4 4 5
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		long millis = args.length > 2 ? Long.parseLong(args[2]) * 1000 : 5000;
+		measure("ThreadSafeInvertedIndex", new ThreadSafeInvertedIndex(), writers, readers, millis);
+		measure("StripedInvertedIndex", new StripedInvertedIndex(), writers, readers, millis);
+		churn("ThreadSafeInvertedIndex", new ThreadSafeInvertedIndex(), readers, millis);
+		churn("StripedInvertedIndex", new StripedInvertedIndex(), readers, millis);
+	}
+}
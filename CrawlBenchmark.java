@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Measures the pages per second of crawling a slow {@link LocalHttpServer}
+ * with each page fetched on the {@link WorkQueue}, as the crawler does by
+ * default, against fetching on a thread per page from
+ * {@link VirtualThreads} and against {@link AsyncFetcher}. The work queue has
+ * the same threads in every mode; in the last two it only indexes pages.
+ */
+public class CrawlBenchmark {
+
+	/**
+	 * crawls the server from its first page and reports the pages per second
+	 * @param name the name of the mode
+	 * @param server the server to crawl
+	 * @param pages the number of pages to crawl
+	 * @param threads the number of work queue threads
+	 * @param fetcher the asynchronous fetcher, or null
+	 * @param fetchers the executor to fetch on, or null
+	 */
+	private static void measure(String name, LocalHttpServer server, int pages, int threads, AsyncFetcher fetcher,
+			ExecutorService fetchers) {
+		WorkQueue queue = new WorkQueue(threads);
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+		WebCrawler crawler = new WebCrawler(index, queue, false, HostScheduler.UNLIMITED, 0, fetcher, fetchers);
+		long start = System.nanoTime();
+		crawler.seedCrawl(server.url(0), pages);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		queue.shutdown();
+		System.out.printf("%-9s %9.1f pages/s %8.3f s %6d pages %8d words%n", name, index.getLocations().size() / seconds,
+				seconds, index.getLocations().size(), index.getWords().size());
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args the number of pages to crawl, default 1000, the
+	 * milliseconds the server waits before each response, default 100, the
+	 * number of hosts, default 8, and the number of work queue threads,
+	 * default 5
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long delay = args.length > 1 ? Long.parseLong(args[1]) : 100;
+		int hosts = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : WorkQueue.DEFAULT;
+		System.out.println(VirtualThreads.available() ? "virtual threads available" : "virtual threads unavailable, using a cached pool");
+
+		try(LocalHttpServer server = new LocalHttpServer(hosts, 10, delay)) {
+			AsyncFetcher fetcher = new AsyncFetcher();
+			ExecutorService fetchers = VirtualThreads.newPerTaskExecutor();
+			measure("warmup", server, Math.min(pages, 100), threads, null, fetchers);
+			measure("warmup", server, Math.min(pages, 100), threads, fetcher, null);
+			measure("queue", server, pages, threads, null, null);
+			measure("virtual", server, pages, threads, null, fetchers);
+			measure("async", server, pages, threads, fetcher, null);
+			fetchers.shutdown();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which URLs a crawl admits, shared by every crawl thread without a
+ * lock.
+ *
+ * <p>A URL is admitted at most once and only while fewer than the limit have
+ * been admitted. URLs already seen are kept in a concurrent set, or in a
+ * {@link BloomFilter} for very large crawls, which takes a few bits per URL
+ * but now and then turns away a URL that was never seen. The number admitted
+ * is counted by compare-and-set, so a crawl admits exactly the limit however
+ * many threads offer links at once.</p>
+ *
+ * <p>Each admitted URL is numbered in the order it was admitted, so admitted
+ * URLs sort by their depth from the seed and then by that order, and a crawl
+ * that takes them in that order goes breadth-first.</p>
+ */
+public class CrawlFrontier {
+	/** The false positive rate of the Bloom filter, when one is used. */
+	public static final double BLOOM_RATE = 0.001;
+
+	private final int limit;
+	private final Set<String> seen;
+	private final BloomFilter bloom;
+	private final AtomicInteger admitted;
+	private final AtomicLong sequence;
+
+	/**
+	 * Creates a frontier that remembers every URL seen exactly.
+	 * @param limit the most URLs to admit
+	 */
+	public CrawlFrontier(int limit) {
+		this(limit, false);
+	}
+
+	/**
+	 * Creates a frontier.
+	 * @param limit the most URLs to admit
+	 * @param bloom true to remember the URLs seen in a Bloom filter rather than a set
+	 */
+	public CrawlFrontier(int limit, boolean bloom) {
+		this.limit = limit;
+		this.seen = bloom ? null : ConcurrentHashMap.<String>newKeySet();
+		this.bloom = bloom ? new BloomFilter(limit, BLOOM_RATE) : null;
+		this.admitted = new AtomicInteger(0);
+		this.sequence = new AtomicLong(0);
+	}
+
+	/**
+	 * Admits a URL, unless it was seen before or the limit has been reached.
+	 * @param url the URL
+	 * @param depth the number of links followed from the seed to the URL
+	 * @return the admitted URL, or null if it was not admitted
+	 */
+	public Entry offer(String url, int depth) {
+		if(admitted.get() >= limit) {
+			return null;
+		}
+		if(!(seen != null ? seen.add(url) : bloom.add(url))) {
+			return null;
+		}
+		int count;
+		do {
+			count = admitted.get();
+			if(count >= limit) {
+				return null;
+			}
+		} while(!admitted.compareAndSet(count, count + 1));
+		return new Entry(url, depth, sequence.getAndIncrement());
+	}
+
+	/**
+	 * returns the number of URLs admitted so far
+	 * @return the number of URLs admitted
+	 */
+	public int admitted() {
+		return admitted.get();
+	}
+
+	/**
+	 * returns the most URLs admitted
+	 * @return the limit
+	 */
+	public int limit() {
+		return limit;
+	}
+
+	/**
+	 * An admitted URL and its depth from the seed, ordered closest to the seed
+	 * first.
+	 */
+	public static class Entry implements Comparable<Entry> {
+		private final String url;
+		private final int depth;
+		private final long order;
+
+		private Entry(String url, int depth, long order) {
+			this.url = url;
+			this.depth = depth;
+			this.order = order;
+		}
+
+		/**
+		 * gets the URL
+		 * @return the URL
+		 */
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * gets the depth
+		 * @return the number of links followed from the seed to the URL
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if(depth != other.depth) {
+				return Integer.compare(depth, other.depth);
+			}
+			return Long.compare(order, other.order);
+		}
+	}
+}
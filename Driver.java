@@ -27,6 +27,15 @@ public class Driver {
  		ThreadSafeInvertedIndex threadSafe = null;
  		WorkQueue queue = null;
  		WebCrawler crawler = null;
+ 		int top = Integer.MAX_VALUE;
+ 		
+ 		if(map.hasValue("-top")) {
+ 			try {
+ 				top = Integer.parseInt(map.getString("-top"));
+ 			} catch(NumberFormatException e) {
+ 				System.err.println("Invalid input");
+ 			}
+ 		}
  		
  		if(map.hasFlag("-threads") || map.hasFlag("-url") || map.hasFlag("-port")) {
  			if(map.hasValue("-threads")) {
@@ -43,20 +52,76 @@ public class Driver {
 				threads = 5;
 			}
 			queue = new WorkQueue(threads);
- 			threadSafe = new ThreadSafeInvertedIndex();
+ 			if(map.hasFlag("-segmented")) {
+ 				threadSafe = new SegmentedInvertedIndex();
+ 			} else {
+ 				threadSafe = new StripedInvertedIndex();
+ 			}
  			index = threadSafe;
- 			helper = new ThreadSafeSearchResultHelper(queue, threadSafe);
- 			crawler = new WebCrawler(threadSafe, queue);
+ 			helper = new ThreadSafeSearchResultHelper(queue, threadSafe, top);
+ 			int perHost = HostScheduler.UNLIMITED;
+ 			long delay = 0;
+ 			try {
+ 				if(map.hasValue("-perhost")) {
+ 					perHost = Integer.parseInt(map.getString("-perhost"));
+ 				}
+ 				if(map.hasValue("-delay")) {
+ 					delay = Long.parseLong(map.getString("-delay"));
+ 				}
+ 			} catch(NumberFormatException e) {
+ 				System.err.println("Invalid input");
+ 			}
+ 			crawler = new WebCrawler(threadSafe, queue, map.hasFlag("-bloom"), perHost, delay,
+ 					map.hasFlag("-async") ? new AsyncFetcher() : null,
+ 					map.hasFlag("-virtual") ? VirtualThreads.newPerTaskExecutor() : null);
  		} else {
- 			index = new InvertedIndex();
- 			helper = new SearchResultHelper(index);
+ 			if(map.hasFlag("-compact")) {
+ 				index = new CompactInvertedIndex();
+ 			} else {
+ 				index = new InvertedIndex();
+ 			}
+ 			helper = new SearchResultHelper(index, top);
+ 		}
+
+ 		boolean loaded = false;
+ 		if(map.hasValue("-load")) {
+ 			try {
+ 				index = IndexSegment.open(map.getPath("-load"));
+ 				if(queue != null) {
+ 					helper = new ThreadSafeSearchResultHelper(queue, index, top);
+ 				} else {
+ 					helper = new SearchResultHelper(index, top);
+ 				}
+ 				loaded = true;
+ 			} catch(IOException e) {
+ 				System.out.println("Error loading index" + map.getString("-load"));
+ 			}
  		}
 
  		try {
- 			if(map.hasValue("-path")) {
+ 			if(map.hasValue("-import") && !loaded) {
+ 				new ShardedExporter(queue).load(map.getPath("-import"), index);
+ 			}
+ 		} catch(IOException e) {
+ 			System.out.println("Error importing index" + map.getString("-import"));
+ 		}
+
+ 		try {
+ 			if(map.hasValue("-path") && !loaded) {
  				Path lanes = map.getPath("-path");
- 				if (threadSafe != null) {
- 					ThreadSafeInvertedIndexHelper.readDirectory(lanes, threadSafe, queue);
+ 				if(map.hasValue("-incremental")) {
+ 					IncrementalIndexer incremental = new IncrementalIndexer(index, queue);
+ 					incremental.update(lanes, map.getPath("-incremental"));
+ 					if(map.hasFlag("-stats")) {
+ 						System.out.println(incremental);
+ 					}
+ 				}
+ 				else if (threadSafe != null) {
+ 					IngestStats stats = ThreadSafeInvertedIndexHelper.readDirectory(lanes, threadSafe, queue);
+ 					if(map.hasFlag("-stats")) {
+ 						System.out.println(stats);
+ 						System.out.println(StemCache.statistics());
+ 					}
  				}
  				else {
  					if(Files.isDirectory(lanes)) {
@@ -71,7 +136,7 @@ public class Driver {
  		}
  		
  		try {
-			if(map.hasFlag("-url")) {
+			if(map.hasFlag("-url") && !loaded) {
 				if(map.hasValue("-url")) {
 					crawler.seedCrawl(new URL(map.getString("-url")), Integer.parseInt(map.getString("-limit", "50")));
 				}
@@ -82,14 +147,57 @@ public class Driver {
 			System.err.println("Not a number");
 		}
  		
+ 		if(map.hasFlag("-snapshot") && threadSafe != null && !loaded) {
+ 			SnapshotInvertedIndex snapshot = new SnapshotInvertedIndex();
+ 			snapshot.addAll(threadSafe);
+ 			index = snapshot;
+ 			helper = new ThreadSafeSearchResultHelper(queue, snapshot, top);
+ 		}
+ 		
+ 		if(map.hasFlag("-freeze")) {
+ 			index = index.freeze();
+ 			if(queue != null) {
+ 				helper = new ThreadSafeSearchResultHelper(queue, index, top);
+ 			} else {
+ 				helper = new SearchResultHelper(index, top);
+ 			}
+ 		}
+ 		
+ 		try {
+ 			if(map.hasValue("-save")) {
+ 				index.freeze().write(map.getPath("-save"));
+ 			}
+ 		} catch(IOException e) {
+ 			System.out.println("Error saving index" + map.getString("-save"));
+ 		}
+ 		
+ 		if(map.hasFlag("-port") || map.hasFlag("-prefixcache")) {
+ 			try {
+ 				index.setPrefixCache(new PrefixCache());
+ 			} catch(UnsupportedOperationException e) {
+ 				System.out.println("Not caching prefixes: " + e.getMessage());
+ 			}
+ 		}
+ 		
  		try {
  			if(map.hasFlag("-index")) {
  				Path path = map.getPath("-index", Paths.get("index.json"));
- 				index.output(path);
+ 				index.output(path, !map.hasFlag("-compactjson"));
  			}
  		} catch(IOException e) {
  			System.out.println("Error writing file" + map.getString("-index"));
  		}
+
+ 		try {
+ 			if(map.hasValue("-export")) {
+ 				int shards = Integer.parseInt(map.getString("-shards", Integer.toString(Math.max(threads, 1) * 2)));
+ 				new ShardedExporter(queue).export(index, map.getPath("-export"), shards, !map.hasFlag("-compactjson"));
+ 			}
+ 		} catch(IOException e) {
+ 			System.out.println("Error exporting index" + map.getString("-export"));
+ 		} catch(NumberFormatException e) {
+ 			System.err.println("Not a number");
+ 		}
  	
  		try {
  			if(map.hasValue("-search")) {
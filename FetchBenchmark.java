@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the pages per second of fetching pages from a
+ * {@link LocalHttpServer} with {@link HTMLFetcher} on a {@link WorkQueue}, as
+ * the crawler does, against {@link AsyncFetcher} with as many fetches in
+ * flight as the queue has threads, with a few hundred, and with every fetch at
+ * once, and checks they all fetch the same html. Also reports how many
+ * connections each opened, which shows the fetcher reusing connections.
+ */
+public class FetchBenchmark {
+
+	/**
+	 * fetches every page on a work queue, one connection each
+	 * @return the number of pages whose html differs from what the server sent
+	 */
+	private static int blocking(LocalHttpServer server, int pages, int threads) {
+		WorkQueue queue = new WorkQueue(threads);
+		AtomicInteger differ = new AtomicInteger(0);
+		for(int page = 0; page < pages; page++) {
+			int fetched = page;
+			queue.execute(() -> {
+				try {
+					if(!same(server.html(fetched), HTMLFetcher.fetchHTML(server.url(fetched), 0))) {
+						differ.incrementAndGet();
+					}
+				} catch(IOException e) {
+					differ.incrementAndGet();
+				}
+			});
+		}
+		queue.finish();
+		queue.shutdown();
+		return differ.get();
+	}
+
+	/**
+	 * fetches every page through one fetcher, a number of them in flight at
+	 * once, each chain of fetches starting the next when one completes
+	 * @return the number of pages whose html differs from what the server sent
+	 */
+	private static int async(LocalHttpServer server, AsyncFetcher fetcher, int pages, int inFlight) {
+		AtomicInteger differ = new AtomicInteger(0);
+		AtomicInteger next = new AtomicInteger(0);
+		CompletableFuture<?>[] chains = new CompletableFuture<?>[Math.min(inFlight, pages)];
+		for(int i = 0; i < chains.length; i++) {
+			chains[i] = chain(server, fetcher, pages, next, differ);
+		}
+		CompletableFuture.allOf(chains).join();
+		return differ.get();
+	}
+
+	/**
+	 * fetches the next page not taken yet, then the one after that, until every page is taken
+	 */
+	private static CompletableFuture<Void> chain(LocalHttpServer server, AsyncFetcher fetcher, int pages,
+			AtomicInteger next, AtomicInteger differ) {
+		int page = next.getAndIncrement();
+		if(page >= pages) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return fetcher.fetchHTML(server.url(page), 0).handle((html, error) -> {
+			if(error != null || !same(server.html(page), html)) {
+				differ.incrementAndGet();
+			}
+			return null;
+		}).thenCompose(done -> chain(server, fetcher, pages, next, differ));
+	}
+
+	/**
+	 * measures fetching every page through one fetcher
+	 */
+	private static void async(LocalHttpServer server, AsyncFetcher fetcher, int pages, int inFlight, String name) {
+		int connections = server.connections();
+		long start = System.nanoTime();
+		int differ = async(server, fetcher, pages, inFlight);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		print(name, pages, seconds, server.connections() - connections, differ);
+	}
+
+	/**
+	 * prints one measurement
+	 */
+	private static void print(String name, int pages, double seconds, int connections, int differ) {
+		System.out.printf("%-12s %9.1f pages/s %8.3f s %6d connections %d differ%n", name, pages / seconds, seconds,
+				connections, differ);
+	}
+
+	/**
+	 * tells if fetched html is the html sent, as lines joined by newlines
+	 */
+	private static boolean same(String sent, String fetched) {
+		return fetched != null && String.join("\n", sent.split("\\R")).equals(String.join("\n", fetched.split("\\R")));
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args the number of pages, default 2000, the milliseconds the
+	 * server waits before each response, default 20, the number of hosts,
+	 * default 4, and the number of work queue threads, default 5
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		long delay = args.length > 1 ? Long.parseLong(args[1]) : 20;
+		int hosts = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : WorkQueue.DEFAULT;
+
+		try(LocalHttpServer server = new LocalHttpServer(hosts, 5, delay)) {
+			AsyncFetcher fetcher = new AsyncFetcher();
+			async(server, fetcher, Math.min(pages, 100), threads);
+			blocking(server, Math.min(pages, 100), threads);
+
+			int connections = server.connections();
+			long start = System.nanoTime();
+			int differ = blocking(server, pages, threads);
+			print("blocking", pages, (System.nanoTime() - start) / 1e9, server.connections() - connections, differ);
+
+			async(server, fetcher, pages, threads, "async " + threads);
+			async(server, fetcher, pages, 256, "async 256");
+			async(server, fetcher, pages, pages, "async all");
+		}
+	}
+}
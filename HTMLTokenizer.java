@@ -0,0 +1,375 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Splits HTML into its cleaned, lowercase words and the links of its anchor
+ * tags in one pass, fed a piece at a time, so a page never has to be held
+ * whole. The words are those of running {@link TextParser#parse(String)} on
+ * {@link HTMLCleaner#stripHTML(String)}, and the links those of
+ * {@link LinkParser#listLinks(URL, String)}, for well-formed HTML:
+ *
+ * <ul>
+ * <li>comments, and the head, style and script elements, are left out and
+ * split the words on either side</li>
+ * <li>other tags are left out without splitting the words on either side, so
+ * "A&lt;b&gt;B&lt;/b&gt;C" is the one word "abc"</li>
+ * <li>entities are left out, an entity being an ampersand, then at most
+ * {@value #ENTITY} characters that are not whitespace, then a semicolon</li>
+ * <li>the href of each anchor tag is made absolute against the base url and
+ * cleaned, and kept if it is http or https</li>
+ * </ul>
+ *
+ * <p>Only the current word, tag and entity are kept. Words longer than
+ * {@value #LONGEST} characters are cut, as are tags, so a page of any size
+ * takes the same memory.</p>
+ */
+public class HTMLTokenizer {
+	/** The most characters an entity may have between the ampersand and semicolon. */
+	public static final int ENTITY = 32;
+
+	/** The most characters of a word or tag that are kept. */
+	public static final int LONGEST = 1 << 16;
+
+	private static final int TEXT = 0;
+	private static final int TAG = 1;
+	private static final int COMMENT = 2;
+	private static final int RAW = 3;
+	private static final int ENTITY_TEXT = 4;
+
+	private final URL base;
+	private final Consumer<String> words;
+	private final Consumer<URL> links;
+	private final boolean ascii;
+	private int state;
+	private boolean head;
+	private char[] word;
+	private int wordLength;
+	private boolean plain;
+	private final StringBuilder tag;
+	private final StringBuilder entity;
+	private String rawEnd;
+	private int matched;
+	private int dashes;
+
+	/**
+	 * Creates a tokenizer.
+	 * @param base the url of the page, to make its links absolute against
+	 * @param words takes each word, in order
+	 * @param links takes each link, in order
+	 */
+	public HTMLTokenizer(URL base, Consumer<String> words, Consumer<URL> links) {
+		this.base = base;
+		this.words = words;
+		this.links = links;
+		// lowercasing ASCII by hand is only the same as toLowerCase when the
+		// default locale has no special rules for it, such as the Turkish dotless i
+		this.ascii = "I".toLowerCase().equals("i");
+		this.state = TEXT;
+		this.head = false;
+		this.word = new char[64];
+		this.wordLength = 0;
+		this.plain = true;
+		this.tag = new StringBuilder();
+		this.entity = new StringBuilder();
+		this.rawEnd = null;
+		this.matched = 0;
+		this.dashes = 0;
+	}
+
+	/**
+	 * Tokenizes all of a reader.
+	 * @param in the html
+	 * @throws IOException
+	 */
+	public void tokenize(Reader in) throws IOException {
+		char[] buffer = new char[8192];
+		int read;
+		while((read = in.read(buffer)) >= 0) {
+			feed(buffer, 0, read);
+		}
+		finish();
+	}
+
+	/**
+	 * Tokenizes the next piece of the html.
+	 * @param chars the characters
+	 * @param offset the index of the first character of the piece
+	 * @param length the number of characters of the piece
+	 */
+	public void feed(char[] chars, int offset, int length) {
+		for(int i = offset; i < offset + length; i++) {
+			char c = chars[i];
+			switch(state) {
+			case TEXT:
+				text(c);
+				break;
+			case ENTITY_TEXT:
+				entity(c);
+				break;
+			case TAG:
+				tag(c);
+				break;
+			case COMMENT:
+				comment(c);
+				break;
+			default:
+				raw(c);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Ends the html, giving out the last word.
+	 */
+	public void finish() {
+		if(state == ENTITY_TEXT) {
+			unentity();
+		}
+		state = TEXT;
+		endWord();
+	}
+
+	/**
+	 * handles a character of text
+	 */
+	private void text(char c) {
+		if(c == '<') {
+			state = TAG;
+			tag.setLength(0);
+		} else if(c == '&') {
+			state = ENTITY_TEXT;
+			entity.setLength(0);
+		} else if(!head) {
+			character(c);
+		}
+	}
+
+	/**
+	 * handles a character after an ampersand, leaving out the entity once its
+	 * semicolon comes, or going back to text as soon as it cannot be one
+	 */
+	private void entity(char c) {
+		if(c == ';' && entity.length() > 0) {
+			state = TEXT;
+		} else if(isSpace(c) || c == '<' || c == '&' || c == ';' || entity.length() == ENTITY) {
+			unentity();
+			text(c);
+		} else {
+			entity.append(c);
+		}
+	}
+
+	/**
+	 * gives the characters of what turned out not to be an entity to the text
+	 */
+	private void unentity() {
+		state = TEXT;
+		if(!head) {
+			character('&');
+			for(int i = 0; i < entity.length(); i++) {
+				character(entity.charAt(i));
+			}
+		}
+	}
+
+	/**
+	 * handles a character of a tag, starting a comment at its "!--"
+	 */
+	private void tag(char c) {
+		if(c != '>') {
+			if(tag.length() < LONGEST) {
+				tag.append(c);
+			}
+			if(tag.length() == 3 && tag.charAt(0) == '!' && tag.charAt(1) == '-' && tag.charAt(2) == '-') {
+				state = COMMENT;
+				dashes = 0;
+			}
+			return;
+		}
+		state = TEXT;
+		boolean closing = tag.length() > 0 && tag.charAt(0) == '/';
+		int start = closing ? 1 : 0;
+		int end = start;
+		while(end < tag.length() && Character.isLetterOrDigit(tag.charAt(end))) {
+			end++;
+		}
+		String name = tag.substring(start, end).toLowerCase(Locale.ROOT);
+		if(name.equals("head")) {
+			endWord();
+			head = !closing;
+		} else if(!closing && (name.equals("script") || name.equals("style"))) {
+			endWord();
+			state = RAW;
+			rawEnd = "</" + name;
+			matched = 0;
+		} else if(!closing && name.equals("a") && end < tag.length() && isSpace(tag.charAt(end))) {
+			link(href(tag, end));
+		}
+	}
+
+	/**
+	 * handles a character of a comment, ending it at "--&gt;"
+	 */
+	private void comment(char c) {
+		if(c == '>' && dashes >= 2) {
+			state = TEXT;
+			endWord();
+		}
+		dashes = c == '-' ? dashes + 1 : 0;
+	}
+
+	/**
+	 * handles a character of a script or style element, ending it at its end
+	 * tag
+	 */
+	private void raw(char c) {
+		if(matched == rawEnd.length()) {
+			if(c == '>') {
+				state = TEXT;
+				endWord();
+			}
+			return;
+		}
+		if(Character.toLowerCase(c) == rawEnd.charAt(matched)) {
+			matched++;
+		} else {
+			matched = c == '<' ? 1 : 0;
+		}
+	}
+
+	/**
+	 * adds a character of text to the current word, or ends the word at
+	 * whitespace
+	 */
+	private void character(char c) {
+		if(isSpace(c)) {
+			endWord();
+			return;
+		}
+		if(wordLength == LONGEST) {
+			return;
+		}
+		if(wordLength == word.length) {
+			word = Arrays.copyOf(word, wordLength * 2);
+		}
+		word[wordLength++] = c;
+		plain &= c < 0x80;
+	}
+
+	/**
+	 * cleans the current word and gives it out if anything is left
+	 */
+	private void endWord() {
+		if(wordLength == 0) {
+			return;
+		}
+		String cleaned;
+		if(plain && ascii) {
+			int length = 0;
+			for(int i = 0; i < wordLength; i++) {
+				char c = word[i];
+				if(c >= 'a' && c <= 'z') {
+					word[length++] = c;
+				} else if(c >= 'A' && c <= 'Z') {
+					word[length++] = (char) (c + ('a' - 'A'));
+				}
+			}
+			cleaned = length > 0 ? new String(word, 0, length) : null;
+		} else {
+			cleaned = TextParser.clean(new String(word, 0, wordLength));
+			if(cleaned.isEmpty()) {
+				cleaned = null;
+			}
+		}
+		wordLength = 0;
+		plain = true;
+		if(cleaned != null) {
+			words.accept(cleaned);
+		}
+	}
+
+	/**
+	 * makes a link absolute and clean and gives it out if it is http or https
+	 * @param href the href, or null if the tag has none
+	 */
+	private void link(String href) {
+		if(href == null) {
+			return;
+		}
+		try {
+			URL absolute = LinkParser.clean(new URL(base, href));
+			if(absolute.getProtocol().startsWith("http")) {
+				links.accept(absolute);
+			}
+		} catch(MalformedURLException e) {
+			return;
+		}
+	}
+
+	/**
+	 * finds the value of the href attribute of a tag, quoted or not
+	 * @param tag the text of the tag between its angle brackets
+	 * @param from the index after the tag name
+	 * @return the value, or null if the tag has no href
+	 */
+	private static String href(CharSequence tag, int from) {
+		int i = from;
+		int length = tag.length();
+		while(i < length) {
+			while(i < length && (isSpace(tag.charAt(i)) || tag.charAt(i) == '/')) {
+				i++;
+			}
+			int nameStart = i;
+			while(i < length && tag.charAt(i) != '=' && !isSpace(tag.charAt(i)) && tag.charAt(i) != '/') {
+				i++;
+			}
+			String name = tag.subSequence(nameStart, i).toString();
+			while(i < length && isSpace(tag.charAt(i))) {
+				i++;
+			}
+			if(i >= length || tag.charAt(i) != '=') {
+				continue;
+			}
+			i++;
+			while(i < length && isSpace(tag.charAt(i))) {
+				i++;
+			}
+			int valueStart;
+			int valueEnd;
+			if(i < length && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+				char quote = tag.charAt(i++);
+				valueStart = i;
+				while(i < length && tag.charAt(i) != quote) {
+					i++;
+				}
+				valueEnd = i++;
+			} else {
+				valueStart = i;
+				while(i < length && !isSpace(tag.charAt(i))) {
+					i++;
+				}
+				valueEnd = i;
+			}
+			if(name.equalsIgnoreCase("href")) {
+				return tag.subSequence(valueStart, valueEnd).toString();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * returns whether a character is whitespace as {@link TextParser#SPLIT_REGEX} matches it
+	 */
+	private static boolean isSpace(char c) {
+		if(c < 0x80) {
+			return c == ' ' || (c >= '\t' && c <= '\r');
+		}
+		return c == '\u0085' || Character.isSpaceChar(c);
+	}
+}
@@ -0,0 +1,223 @@
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Starts the fetches of a crawl, politely to each host.
+ *
+ * <p>Admitted URLs wait in a queue per host, closest to the seed first. A host
+ * has at most a set number of fetches running at once, and each fetch of it
+ * starts at least a set delay after the one before. Hosts with URLs waiting
+ * take turns round-robin, so a crawl spread over many hosts keeps every
+ * thread busy while each host sees a few fetches at a time, and a slow host
+ * holds at most its own share of the threads.</p>
+ *
+ * <p>A fetch is started by a function that returns a future completed once
+ * the page is fetched and indexed, so a fetch may run on a {@link WorkQueue}
+ * or without blocking any thread at all.</p>
+ *
+ * <p>Fetches are started when a URL is added, when a fetch finishes and, for
+ * hosts still waiting out their delay, by the thread in {@link #await()}, so
+ * the scheduler needs no thread of its own.</p>
+ */
+public class HostScheduler {
+	/** The number of fetches of a host at once when not limited. */
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+
+	private final Function<CrawlFrontier.Entry, CompletableFuture<?>> fetch;
+	private final int perHost;
+	private final long delay;
+	private final HashMap<String, Host> hosts;
+	private final ArrayDeque<Host> turns;
+	private int outstanding;
+	private boolean dispatching;
+	private boolean again;
+
+	/**
+	 * Creates a scheduler.
+	 * @param fetch starts fetching and indexing one URL
+	 * @param perHost the most fetches of one host at once, or {@link #UNLIMITED}
+	 * @param delay the least milliseconds between the starts of two fetches of one host
+	 */
+	public HostScheduler(Function<CrawlFrontier.Entry, CompletableFuture<?>> fetch, int perHost, long delay) {
+		this.fetch = fetch;
+		this.perHost = Math.max(perHost, 1);
+		this.delay = TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+		this.hosts = new HashMap<String, Host>();
+		this.turns = new ArrayDeque<Host>();
+		this.outstanding = 0;
+		this.dispatching = false;
+		this.again = false;
+	}
+
+	/**
+	 * Adds an admitted URL to the queue of its host and starts any fetches
+	 * now allowed.
+	 * @param entry the admitted URL
+	 */
+	public synchronized void add(CrawlFrontier.Entry entry) {
+		String name = host(entry.getUrl());
+		Host host = hosts.get(name);
+		if(host == null) {
+			host = new Host(name);
+			hosts.put(name, host);
+		}
+		host.waiting.add(entry);
+		if(!host.taking) {
+			host.taking = true;
+			turns.addLast(host);
+		}
+		outstanding++;
+		dispatch();
+	}
+
+	/**
+	 * Waits until every URL added has been fetched, including URLs added by
+	 * the fetches themselves, starting fetches of hosts whose delay has passed.
+	 */
+	public synchronized void await() {
+		while(outstanding > 0) {
+			long wait = dispatch();
+			try {
+				if(wait > 0) {
+					TimeUnit.NANOSECONDS.timedWait(this, wait);
+				} else {
+					wait();
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * returns the number of URLs added and not fetched yet
+	 * @return the number of URLs waiting or being fetched
+	 */
+	public synchronized int outstanding() {
+		return outstanding;
+	}
+
+	/**
+	 * returns the number of hosts seen
+	 * @return the number of hosts
+	 */
+	public synchronized int hosts() {
+		return hosts.size();
+	}
+
+	/**
+	 * starts one fetch of each host in turn for as long as any host may start
+	 * one, and keeps hosts with URLs still waiting in the turns. a fetch that
+	 * finishes as soon as it starts asks the dispatch already running for
+	 * another round rather than starting one of its own.
+	 * @return the nanoseconds until the next host's delay passes, or 0 if no host is waiting on its delay
+	 */
+	private long dispatch() {
+		if(dispatching) {
+			again = true;
+			return 0;
+		}
+		dispatching = true;
+		long next = 0;
+		boolean started = true;
+		while((started || again) && !turns.isEmpty()) {
+			started = false;
+			again = false;
+			next = 0;
+			long now = System.nanoTime();
+			for(int i = turns.size(); i > 0; i--) {
+				Host host = turns.pollFirst();
+				if(host.running < perHost) {
+					long wait = host.earliest - now;
+					if(wait <= 0) {
+						start(host, host.waiting.poll(), now);
+						started = true;
+					} else if(next == 0 || wait < next) {
+						next = wait;
+					}
+				}
+				if(host.waiting.isEmpty()) {
+					host.taking = false;
+				} else {
+					turns.addLast(host);
+				}
+			}
+		}
+		dispatching = false;
+		return next;
+	}
+
+	/**
+	 * starts a fetch of a host
+	 * @param host the host
+	 * @param entry the URL to fetch
+	 * @param now the time the fetch starts
+	 */
+	private void start(Host host, CrawlFrontier.Entry entry, long now) {
+		host.running++;
+		host.earliest = now + delay;
+		CompletableFuture<?> fetched;
+		try {
+			fetched = fetch.apply(entry);
+		} catch(RuntimeException e) {
+			fetched = CompletableFuture.completedFuture(null);
+		}
+		fetched.whenComplete((result, error) -> finished(host));
+	}
+
+	/**
+	 * counts a finished fetch and starts any fetches it allows
+	 * @param host the host fetched
+	 */
+	private synchronized void finished(Host host) {
+		host.running--;
+		outstanding--;
+		dispatch();
+		notifyAll();
+	}
+
+	/**
+	 * returns the host of a URL, in lower case
+	 * @param url the URL
+	 * @return the host, or an empty string if the URL has none
+	 */
+	private static String host(String url) {
+		try {
+			return new URL(url).getHost().toLowerCase(Locale.ROOT);
+		} catch(MalformedURLException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * The URLs of one host waiting to be fetched and its fetches running.
+	 */
+	private static class Host {
+		private final String name;
+		private final PriorityQueue<CrawlFrontier.Entry> waiting;
+		private int running;
+		private long earliest;
+		private boolean taking;
+
+		private Host(String name) {
+			this.name = name;
+			this.waiting = new PriorityQueue<CrawlFrontier.Entry>();
+			this.running = 0;
+			this.earliest = System.nanoTime();
+			this.taking = false;
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + waiting.size() + " waiting, " + running + " running)";
+		}
+	}
+}
@@ -0,0 +1,375 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * An HTTP response whose body is read as it arrives, rather than read whole
+ * into lines like {@link HttpsFetcher#fetchURL(URL)} does.
+ *
+ * <p>The body is decoded as it is read: a chunked body is read chunk by chunk,
+ * a body with a length stops there, and a gzip or deflate body is inflated.
+ * The headers are kept in the same form as {@link HttpsFetcher#fetchURL(URL)}
+ * gives them, the status line under the null key, but looked up without
+ * regard to case, so {@link HTMLFetcher#isHTML(Map)} and
+ * {@link HTMLFetcher#isRedirect(Map)} work on them as sent by any server.</p>
+ */
+public class HttpStream implements Closeable {
+	/** The most bytes of a status line or header. */
+	public static final int LONGEST_LINE = 1 << 16;
+
+	private final Socket socket;
+	private final Map<String, List<String>> headers;
+	private final int status;
+	private final InputStream body;
+
+	/**
+	 * sends a request and reads the status line and headers of the response
+	 * @param url the url to fetch
+	 * @throws IOException
+	 */
+	private HttpStream(URL url) throws IOException {
+		boolean https = url.getProtocol().equalsIgnoreCase("https");
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		this.socket = https ?
+				SSLSocketFactory.getDefault().createSocket(url.getHost(), port) :
+				SocketFactory.getDefault().createSocket(url.getHost(), port);
+		try {
+			String host = url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort();
+			String resource = url.getFile().isEmpty() ? "/" : url.getFile();
+			OutputStream out = socket.getOutputStream();
+			out.write(("GET " + resource + " HTTP/1.1\r\n"
+					+ "Host: " + host + "\r\n"
+					+ "Accept-Encoding: gzip, deflate\r\n"
+					+ "Connection: close\r\n"
+					+ "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			this.headers = new TreeMap<String, List<String>>(Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+			String line = line(in);
+			if(line == null) {
+				throw new IOException("No response from " + url);
+			}
+			headers.put(null, Arrays.asList(line));
+			String[] parts = line.split(" ", 3);
+			this.status = parts.length > 1 ? Integer.parseInt(parts[1]) : -1;
+			while((line = line(in)) != null && !line.isEmpty()) {
+				String[] split = line.split(":\\s*", 2);
+				if(split.length == 2) {
+					headers.computeIfAbsent(split[0], name -> new ArrayList<String>()).add(split[1]);
+				}
+			}
+			this.body = decode(in);
+		} catch(NumberFormatException e) {
+			socket.close();
+			throw new IOException("Bad status line from " + url, e);
+		} catch(IOException | RuntimeException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Fetches a url, following redirects.
+	 * @param url the url to fetch
+	 * @param redirects the number of times to follow a redirect response
+	 * @return the response, whose body has not been read yet
+	 * @throws IOException if unable to fetch the headers
+	 */
+	public static HttpStream open(URL url, int redirects) throws IOException {
+		HttpStream response = new HttpStream(url);
+		while(response.status / 100 == 3 && HTMLFetcher.isRedirect(response.headers) && redirects-- > 0) {
+			URL location = new URL(url, response.headers.get("Location").get(0));
+			response.close();
+			url = location;
+			response = new HttpStream(url);
+		}
+		return response;
+	}
+
+	/**
+	 * returns the status code
+	 * @return the status code, or -1 if there was none
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * returns the headers, the status line under the null key
+	 * @return the headers, looked up without regard to case
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * tells if the response is an html page
+	 * @return true if the status is 200 and the content type html
+	 */
+	public boolean isHTML() {
+		return status == 200 && HTMLFetcher.isHTML(headers);
+	}
+
+	/**
+	 * returns the decoded body, read as it arrives
+	 * @return the body
+	 */
+	public InputStream getBody() {
+		return body;
+	}
+
+	/**
+	 * returns the body as text, in the charset of its content type or UTF-8
+	 * @return the text of the body
+	 */
+	public Reader getReader() {
+		Charset charset = StandardCharsets.UTF_8;
+		List<String> types = headers.get("Content-Type");
+		if(types != null) {
+			for(String parameter : types.get(0).split(";")) {
+				String[] split = parameter.trim().split("=", 2);
+				if(split.length == 2 && split[0].equalsIgnoreCase("charset")) {
+					try {
+						charset = Charset.forName(split[1].replace("\"", "").trim());
+					} catch(IllegalArgumentException e) {
+						charset = StandardCharsets.UTF_8;
+					}
+				}
+			}
+		}
+		return new InputStreamReader(body, charset);
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	/**
+	 * wraps the rest of the response in the decoding its headers ask for
+	 * @param in the response after its headers
+	 * @return the body
+	 * @throws IOException
+	 */
+	private InputStream decode(InputStream in) throws IOException {
+		InputStream decoded;
+		if(status / 100 == 1 || status == 204 || status == 304) {
+			decoded = new LengthInputStream(in, 0);
+		} else if(header("Transfer-Encoding").contains("chunked")) {
+			decoded = new ChunkedInputStream(in);
+		} else if(!header("Content-Length").isEmpty()) {
+			try {
+				decoded = new LengthInputStream(in, Long.parseLong(header("Content-Length").trim()));
+			} catch(NumberFormatException e) {
+				decoded = in;
+			}
+		} else {
+			decoded = in;
+		}
+		String encoding = header("Content-Encoding");
+		if(encoding.contains("gzip")) {
+			PushbackInputStream peek = new PushbackInputStream(decoded, 1);
+			int first = peek.read();
+			if(first < 0) {
+				return peek;
+			}
+			peek.unread(first);
+			return new GZIPInputStream(peek, 8192);
+		}
+		if(encoding.contains("deflate")) {
+			PushbackInputStream peek = new PushbackInputStream(decoded, 2);
+			int first = peek.read();
+			int second = first < 0 ? -1 : peek.read();
+			if(second >= 0) {
+				peek.unread(second);
+			}
+			if(first >= 0) {
+				peek.unread(first);
+			}
+			// servers send deflate both with the zlib wrapper it should have and without
+			boolean zlib = first >= 0 && second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+			return new InflaterInputStream(peek, new Inflater(!zlib), 8192);
+		}
+		return decoded;
+	}
+
+	/**
+	 * returns a header in lower case, or an empty string if there is none
+	 */
+	private String header(String name) {
+		List<String> values = headers.get(name);
+		return values == null ? "" : String.join(",", values).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * reads a line ended by CRLF or LF
+	 * @param in the stream
+	 * @return the line without its end, or null at the end of the stream
+	 * @throws IOException if the line is too long
+	 */
+	private static String line(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while((b = in.read()) >= 0 && b != '\n') {
+			if(line.size() == LONGEST_LINE) {
+				throw new IOException("Header line too long");
+			}
+			line.write(b);
+		}
+		if(b < 0 && line.size() == 0) {
+			return null;
+		}
+		String text = line.toString("ISO-8859-1");
+		return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+	}
+
+	/**
+	 * A body of a known number of bytes.
+	 */
+	private static class LengthInputStream extends FilterInputStream {
+		private long remaining;
+
+		private LengthInputStream(InputStream in, long length) {
+			super(in);
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(remaining <= 0) {
+				return -1;
+			}
+			int b = in.read();
+			if(b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if(remaining <= 0) {
+				return -1;
+			}
+			int read = in.read(bytes, offset, (int) Math.min(length, remaining));
+			if(read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(in.available(), remaining);
+		}
+	}
+
+	/**
+	 * A body sent in chunks, each after a line giving its size in hex, ending
+	 * with a chunk of size 0 and any trailing headers.
+	 */
+	private static class ChunkedInputStream extends FilterInputStream {
+		private long remaining;
+		private boolean done;
+
+		private ChunkedInputStream(InputStream in) {
+			super(in);
+			this.remaining = 0;
+			this.done = false;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(!next()) {
+				return -1;
+			}
+			int b = in.read();
+			if(b < 0) {
+				throw new IOException("Chunked body ended early");
+			}
+			remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if(length == 0) {
+				return 0;
+			}
+			if(!next()) {
+				return -1;
+			}
+			int read = in.read(bytes, offset, (int) Math.min(length, remaining));
+			if(read < 0) {
+				throw new IOException("Chunked body ended early");
+			}
+			remaining -= read;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return done ? 0 : (int) Math.min(in.available(), remaining);
+		}
+
+		/**
+		 * reads the size of the next chunk once the current one is used up
+		 * @return false once the last chunk has been read
+		 */
+		private boolean next() throws IOException {
+			if(done) {
+				return false;
+			}
+			if(remaining > 0) {
+				return true;
+			}
+			String size = line(in);
+			if(size != null && size.isEmpty()) {
+				size = line(in);
+			}
+			if(size == null) {
+				throw new IOException("Chunked body ended early");
+			}
+			int extension = size.indexOf(';');
+			try {
+				remaining = Long.parseLong((extension < 0 ? size : size.substring(0, extension)).trim(), 16);
+			} catch(NumberFormatException e) {
+				throw new IOException("Bad chunk size " + size);
+			}
+			if(remaining == 0) {
+				String trailer;
+				while((trailer = line(in)) != null && !trailer.isEmpty()) {
+					continue;
+				}
+				done = true;
+				return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Keeps a saved index up to date with a directory of text files, reading only
+ * the files that changed since it was last saved. The size, modification time
+ * and content hash of every file indexed are saved in a manifest
+ * ({@value #MANIFEST}) next to the index files. A file whose size and
+ * modification time are unchanged is skipped without being read, a file whose
+ * content hash is unchanged is skipped after being hashed, and the words of
+ * modified and deleted files are removed from the index before modified and
+ * new files are read again.
+ */
+public class IncrementalIndexer {
+	/** The file holding the size, modification time and hash of each file. */
+	public static final String MANIFEST = "manifest.bin";
+
+	private final InvertedIndex index;
+	private final WorkQueue queue;
+	private int unchanged;
+	private int added;
+	private int modified;
+	private int deleted;
+
+	/**
+	 * Creates an incremental indexer.
+	 * @param index the index to update
+	 * @param queue the WorkQueue to read files with, or null to read them one by one
+	 */
+	public IncrementalIndexer(InvertedIndex index, WorkQueue queue) {
+		this.index = index;
+		this.queue = queue;
+		unchanged = 0;
+		added = 0;
+		modified = 0;
+		deleted = 0;
+	}
+
+	/**
+	 * Loads the index saved in a directory, if any, brings it up to date with
+	 * the text files under path, and saves it and its manifest back.
+	 * @param path the directory or file to index
+	 * @param directory the directory the index is saved in
+	 * @throws IOException
+	 */
+	public void update(Path path, Path directory) throws IOException {
+		TreeMap<String, FileState> previous = readManifest(directory);
+		if(!previous.isEmpty() && Files.exists(directory.resolve(IndexSegment.TERMS))) {
+			index.addAll(IndexSegment.open(directory));
+		}
+
+		TreeMap<String, FileState> current = new TreeMap<String, FileState>();
+		TreeSet<String> removed = new TreeSet<String>();
+		ArrayList<Path> changed = new ArrayList<Path>();
+		ArrayList<Path> files = new ArrayList<Path>();
+		if(Files.isDirectory(path)) {
+			listTextFiles(path, files);
+		} else {
+			files.add(path);
+		}
+		for(Path file : files) {
+			String location = file.toString();
+			FileState state = previous.get(location);
+			long size = Files.size(file);
+			long time = Files.getLastModifiedTime(file).toMillis();
+			if(state != null && state.size == size && state.modified == time) {
+				current.put(location, state);
+				unchanged++;
+				continue;
+			}
+			String hash = hash(file);
+			current.put(location, new FileState(size, time, hash));
+			if(state != null && state.hash.equals(hash)) {
+				unchanged++;
+				continue;
+			}
+			if(state != null) {
+				removed.add(location);
+				modified++;
+			} else {
+				added++;
+			}
+			changed.add(file);
+		}
+		for(String location : previous.keySet()) {
+			if(!current.containsKey(location)) {
+				removed.add(location);
+				deleted++;
+			}
+		}
+
+		index.removeAll(removed);
+		readFiles(changed);
+		index.freeze().write(directory);
+		writeManifest(directory, current);
+	}
+
+	/**
+	 * adds every text file under a directory to a list
+	 * @param directory the directory
+	 * @param files the list of files
+	 * @throws IOException
+	 */
+	private static void listTextFiles(Path directory, ArrayList<Path> files) throws IOException {
+		try(DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
+			for(Path file : listing) {
+				if(Files.isDirectory(file)) {
+					listTextFiles(file, files);
+				} else if(InvertedIndexHelper.isTextFile(file)) {
+					files.add(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * reads files into the index, on the queue if there is one
+	 * @param files the files to read
+	 * @throws IOException
+	 */
+	private void readFiles(ArrayList<Path> files) throws IOException {
+		if(queue == null) {
+			for(Path file : files) {
+				InvertedIndexHelper.readFile(file, index);
+			}
+			return;
+		}
+		BulkAdder adder = new BulkAdder(index);
+		for(Path file : files) {
+			queue.execute(() -> {
+				try {
+					InvertedIndex local = new InvertedIndex();
+					InvertedIndexHelper.readFile(file, local);
+					adder.add(local);
+				} catch(IOException e) {
+					System.out.println("Error adding words to the index");
+				}
+			});
+		}
+		queue.finish();
+		adder.flushAll();
+	}
+
+	/**
+	 * returns the SHA-256 hash of a file's content in hex
+	 * @param file the file
+	 * @return the hash
+	 * @throws IOException
+	 */
+	private static String hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[1 << 16];
+		try(InputStream in = Files.newInputStream(file)) {
+			int read;
+			while((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * reads the manifest saved in a directory
+	 * @param directory the directory the index is saved in
+	 * @return the state of each file, empty if there is no manifest
+	 * @throws IOException
+	 */
+	private static TreeMap<String, FileState> readManifest(Path directory) throws IOException {
+		TreeMap<String, FileState> files = new TreeMap<String, FileState>();
+		Path manifest = directory.resolve(MANIFEST);
+		if(!Files.exists(manifest)) {
+			return files;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+			int count = in.readInt();
+			for(int i = 0; i < count; i++) {
+				String location = in.readUTF();
+				files.put(location, new FileState(in.readLong(), in.readLong(), in.readUTF()));
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * saves the manifest in a directory
+	 * @param directory the directory the index is saved in
+	 * @param files the state of each file
+	 * @throws IOException
+	 */
+	private static void writeManifest(Path directory, TreeMap<String, FileState> files) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(MANIFEST))))) {
+			out.writeInt(files.size());
+			for(String location : files.keySet()) {
+				FileState state = files.get(location);
+				out.writeUTF(location);
+				out.writeLong(state.size);
+				out.writeLong(state.modified);
+				out.writeUTF(state.hash);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d files unchanged, %d added, %d modified, %d deleted", unchanged, added, modified, deleted);
+	}
+
+	/**
+	 * The size, modification time and content hash of a file when it was indexed.
+	 */
+	private static class FileState {
+		private final long size;
+		private final long modified;
+		private final String hash;
+
+		private FileState(long size, long modified, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+}
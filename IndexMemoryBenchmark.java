@@ -0,0 +1,102 @@
+import java.util.Random;
+
+/**
+ * Compares the heap used per million postings by {@link InvertedIndex},
+ * {@link CompactInvertedIndex} and a frozen {@link IndexSegment}. Run with a
+ * fixed heap (for example -Xmx2g) so the numbers are comparable between runs.
+ */
+public class IndexMemoryBenchmark {
+
+	/** The number of distinct words in the generated postings. */
+	private static final int WORDS = 50000;
+
+	/** The number of distinct documents in the generated postings. */
+	private static final int DOCUMENTS = 2000;
+
+	/**
+	 * Adds the same pseudo-random postings to the index. Words are drawn from a
+	 * skewed distribution so a few words occur in most documents, like text.
+	 *
+	 * @param index the index to fill
+	 * @param postings the number of postings to add
+	 */
+	public static void fill(InvertedIndex index, int postings) {
+		Random random = new Random(212);
+		int perDocument = Math.max(1, postings / DOCUMENTS);
+		int added = 0;
+		for(int document = 0; added < postings; document++) {
+			String location = "document" + document + ".txt";
+			for(int position = 1; position <= perDocument && added < postings; position++) {
+				int rank = (int) Math.pow(WORDS, random.nextDouble());
+				index.addWord("word" + rank, location, position);
+				added++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the heap in use after asking the collector to run.
+	 *
+	 * @return used heap in bytes
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Fills the index and reports its heap per million postings.
+	 *
+	 * @param name the name to report
+	 * @param index an empty index
+	 * @param postings the number of postings to add
+	 */
+	private static void measure(String name, InvertedIndex index, int postings) {
+		long before = usedHeap();
+		long start = System.nanoTime();
+		fill(index, postings);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long bytes = usedHeap() - before;
+		System.out.printf("%-22s %10d words %8.1f MB per million postings %6.1f bytes/posting %6.2f s%n",
+				name, index.size(), bytes * 1e6 / postings / (1 << 20), (double) bytes / postings, seconds);
+	}
+
+	/**
+	 * Fills a tree index, freezes it and reports the heap of the frozen
+	 * segment alone.
+	 *
+	 * @param postings the number of postings to add
+	 */
+	private static void measureFrozen(int postings) {
+		long before = usedHeap();
+		long start = System.nanoTime();
+		InvertedIndex tree = new InvertedIndex();
+		fill(tree, postings);
+		IndexSegment segment = tree.freeze();
+		tree = null;
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long bytes = usedHeap() - before;
+		System.out.printf("%-22s %10d words %8.1f MB per million postings %6.1f bytes/posting %6.2f s%n",
+				"IndexSegment", segment.size(), bytes * 1e6 / postings / (1 << 20), (double) bytes / postings, seconds);
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args optional number of postings, default 1000000
+	 */
+	public static void main(String[] args) {
+		int postings = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		measure("InvertedIndex", new InvertedIndex(), postings);
+		measure("CompactInvertedIndex", new CompactInvertedIndex(), postings);
+		measureFrozen(postings);
+	}
+}
@@ -0,0 +1,882 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * An immutable, compressed inverted index built by freezing an
+ * {@link InvertedIndex} once it is done being built. Words and locations are
+ * kept in sorted arrays and every posting list is variable-byte coded in one
+ * {@link RegionBuffer}, addressed by long offsets so the postings are not
+ * limited to 2 GB: location ids and positions are stored as gaps and only
+ * decoded while a query walks them.
+ *
+ * <p>Each posting list holds the number of locations followed by, for every
+ * location, the gap to the previous location id, the number of positions, the
+ * byte length of the positions and then the positions themselves (the first one
+ * zig-zag coded, the rest as gaps). The byte length lets searches, which only
+ * need counts, skip over the positions.</p>
+ *
+ * <p>Words are looked up in a {@link TermDictionary}, so partial searches
+ * enumerate exactly the words under a prefix, found by two binary searches,
+ * instead of walking a tree until a word no longer matches. The dictionary
+ * also holds the number of locations of each word, so a partial search knows
+ * how many postings it will add before it decodes any of them.</p>
+ *
+ * <p>A segment can be written to a directory as three files: the term
+ * dictionary ({@value #TERMS}), the document table ({@value #DOCUMENTS}) and
+ * the posting lists ({@value #POSTINGS}) exactly as they are held in memory.
+ * Opening the directory reads the two small tables and memory-maps the posting
+ * lists in 1 GB windows, so they stay off the heap, may pass 2 GB and nothing
+ * has to be re-indexed. Words and locations are written as their length and
+ * UTF-8 bytes, so they are not limited to 64 KB.</p>
+ *
+ * <p>A segment is never changed, but {@link #delete(Collection)} returns a
+ * segment sharing its tables and postings with a tombstone bitset of removed
+ * location ids, which searches skip as they walk the postings. The space is
+ * only reclaimed by {@link #purge()}, which freezes the locations left into a
+ * new segment.</p>
+ */
+public class IndexSegment extends InvertedIndex {
+	/** The file holding each word, the offset of its posting list and its number of locations. */
+	public static final String TERMS = "terms.bin";
+
+	/** The file holding each location and its word count. */
+	public static final String DOCUMENTS = "documents.bin";
+
+	/** The file holding the encoded posting lists. */
+	public static final String POSTINGS = "postings.bin";
+
+	private final TermDictionary terms;
+	private final long[] offsets;
+	private final String[] locations;
+	private final int[] totals;
+	private final RegionBuffer postings;
+	private final BitSet deleted;
+
+	/**
+	 * Initializes a segment from its parts.
+	 * @param terms the words and their number of locations
+	 * @param offsets the start of the postings of each word in postings
+	 * @param locations the locations in sorted order, indexed by location id
+	 * @param totals the word count of each location
+	 * @param postings the encoded posting lists
+	 */
+	protected IndexSegment(TermDictionary terms, long[] offsets, String[] locations, int[] totals, RegionBuffer postings) {
+		this(terms, offsets, locations, totals, postings, new BitSet());
+	}
+
+	/**
+	 * Initializes a segment from its parts and the ids of its removed locations.
+	 * @param terms the words and their number of locations
+	 * @param offsets the start of the postings of each word in postings
+	 * @param locations the locations in sorted order, indexed by location id
+	 * @param totals the word count of each location
+	 * @param postings the encoded posting lists
+	 * @param deleted the ids of the removed locations, never changed afterwards
+	 */
+	private IndexSegment(TermDictionary terms, long[] offsets, String[] locations, int[] totals, RegionBuffer postings, BitSet deleted) {
+		super();
+		this.terms = terms;
+		this.offsets = offsets;
+		this.locations = locations;
+		this.totals = totals;
+		this.postings = postings;
+		this.deleted = deleted;
+	}
+
+	/**
+	 * Builds a segment holding the same postings as an index. The postings are
+	 * written straight into chunks of a {@link RegionBuffer.Writer}, so they are
+	 * held once and may pass 2 GB.
+	 * @param index the index to freeze
+	 * @return the frozen segment
+	 */
+	public static IndexSegment freeze(InvertedIndex index) {
+		InvertedIndex tree = index.asTree();
+		String[] terms = tree.getWords().toArray(new String[0]);
+
+		TreeSet<String> sorted = new TreeSet<String>();
+		for(String term : terms) {
+			sorted.addAll(tree.getLocations(term));
+		}
+		String[] locations = sorted.toArray(new String[0]);
+		int[] totals = new int[locations.length];
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		for(int i = 0; i < locations.length; i++) {
+			ids.put(locations[i], i);
+			totals[i] = tree.getTotal(locations[i]);
+		}
+
+		long[] offsets = new long[terms.length];
+		int[] frequencies = new int[terms.length];
+		RegionBuffer.Writer out = new RegionBuffer.Writer();
+		ByteArrayOutputStream positions = new ByteArrayOutputStream();
+		for(int i = 0; i < terms.length; i++) {
+			offsets[i] = out.size();
+			Set<String> documents = tree.getLocations(terms[i]);
+			frequencies[i] = documents.size();
+			VByte.write(documents.size(), out);
+			int previous = 0;
+			for(String location : documents) {
+				int id = ids.get(location);
+				SortedSet<Integer> found = tree.getPositions(terms[i], location);
+				int[] ordered = new int[found.size()];
+				int j = 0;
+				for(int position : found) {
+					ordered[j++] = position;
+				}
+				writePosting(id - previous, ordered, positions, out);
+				previous = id;
+			}
+		}
+		return new IndexSegment(new TermDictionary(terms, frequencies), offsets, locations, totals, out.toBuffer());
+	}
+
+	/**
+	 * Builds one segment holding the postings of several, leaving out their
+	 * removed locations. The sorted locations, words and posting lists of the
+	 * segments are merged in one pass each, without building a tree of them
+	 * or decoding any positions twice. A location found in more than
+	 * one segment gets the positions of all of them and the sum of their word
+	 * counts, as adding the segments to one index would give it.
+	 * @param segments the segments to merge
+	 * @return the merged segment
+	 */
+	public static IndexSegment merge(List<IndexSegment> segments) {
+		int k = segments.size();
+		int[][] ids = new int[k][];
+		int[] next = new int[k];
+		int most = 0;
+		for(int s = 0; s < k; s++) {
+			IndexSegment segment = segments.get(s);
+			ids[s] = new int[segment.locations.length];
+			Arrays.fill(ids[s], -1);
+			next[s] = segment.deleted.nextClearBit(0);
+			most += segment.locations.length;
+		}
+
+		ArrayList<String> locations = new ArrayList<String>();
+		int[] totals = new int[most];
+		while(true) {
+			String least = null;
+			for(int s = 0; s < k; s++) {
+				IndexSegment segment = segments.get(s);
+				if(next[s] < segment.locations.length && (least == null || segment.locations[next[s]].compareTo(least) < 0)) {
+					least = segment.locations[next[s]];
+				}
+			}
+			if(least == null) {
+				break;
+			}
+			int id = locations.size();
+			locations.add(least);
+			for(int s = 0; s < k; s++) {
+				IndexSegment segment = segments.get(s);
+				if(next[s] < segment.locations.length && segment.locations[next[s]].equals(least)) {
+					ids[s][next[s]] = id;
+					totals[id] += segment.totals[next[s]];
+					next[s] = segment.deleted.nextClearBit(next[s] + 1);
+				}
+			}
+		}
+
+		ArrayList<String> terms = new ArrayList<String>();
+		int[] frequencies = new int[16];
+		long[] offsets = new long[16];
+		RegionBuffer.Writer out = new RegionBuffer.Writer();
+		ByteArrayOutputStream positions = new ByteArrayOutputStream();
+		Arrays.fill(next, 0);
+		while(true) {
+			String least = null;
+			for(int s = 0; s < k; s++) {
+				TermDictionary dictionary = segments.get(s).terms;
+				if(next[s] < dictionary.size() && (least == null || dictionary.term(next[s]).compareTo(least) < 0)) {
+					least = dictionary.term(next[s]);
+				}
+			}
+			if(least == null) {
+				break;
+			}
+			int[] holders = new int[k];
+			int[] held = new int[k];
+			int count = 0;
+			for(int s = 0; s < k; s++) {
+				TermDictionary dictionary = segments.get(s).terms;
+				if(next[s] < dictionary.size() && dictionary.term(next[s]).equals(least)) {
+					holders[count] = s;
+					held[count++] = next[s]++;
+				}
+			}
+			int size = mergePostings(segments, ids, holders, held, count, null, null);
+			if(size == 0) {
+				continue;
+			}
+			if(terms.size() == offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				frequencies = Arrays.copyOf(frequencies, frequencies.length * 2);
+			}
+			offsets[terms.size()] = out.size();
+			frequencies[terms.size()] = size;
+			terms.add(least);
+			VByte.write(size, out);
+			mergePostings(segments, ids, holders, held, count, positions, out);
+		}
+		return new IndexSegment(new TermDictionary(terms.toArray(new String[0]), Arrays.copyOf(frequencies, terms.size())),
+				Arrays.copyOf(offsets, terms.size()), locations.toArray(new String[0]), Arrays.copyOf(totals, locations.size()),
+				out.toBuffer());
+	}
+
+	/**
+	 * merges the posting lists of one word in several segments by merged
+	 * location id, joining the positions of a location found in more than one
+	 * @param segments the segments being merged
+	 * @param ids the merged id of each location of each segment, or -1 if it was removed
+	 * @param holders the segments holding the word
+	 * @param held the id of the word in each of those segments
+	 * @param count the number of segments holding the word
+	 * @param positions a buffer to encode positions in, or null to only count
+	 * @param out the postings to write to, or null to only count
+	 * @return the number of locations of the merged posting list
+	 */
+	private static int mergePostings(List<IndexSegment> segments, int[][] ids, int[] holders, int[] held, int count,
+			ByteArrayOutputStream positions, RegionBuffer.Writer out) {
+		Cursor[] cursors = new Cursor[count];
+		for(int i = 0; i < count; i++) {
+			cursors[i] = new Cursor(segments.get(holders[i]), held[i], ids[holders[i]]);
+		}
+		int written = 0;
+		int previous = 0;
+		while(true) {
+			int least = -1;
+			for(Cursor cursor : cursors) {
+				if(cursor.id >= 0 && (least < 0 || cursor.id < least)) {
+					least = cursor.id;
+				}
+			}
+			if(least < 0) {
+				return written;
+			}
+			int[] found = null;
+			for(Cursor cursor : cursors) {
+				if(cursor.id != least) {
+					continue;
+				}
+				if(out == null) {
+					cursor.skip();
+				} else {
+					found = found == null ? cursor.take() : union(found, cursor.take());
+				}
+			}
+			if(out != null) {
+				writePosting(least - previous, found, positions, out);
+				previous = least;
+			}
+			written++;
+		}
+	}
+
+	/**
+	 * writes the gap to the previous location id, the number of positions,
+	 * their byte length and then the positions, the first zig-zag coded and
+	 * the rest as gaps
+	 * @param gap the gap to the previous location id
+	 * @param sorted the positions in increasing order
+	 * @param positions a buffer to encode the positions in first
+	 * @param out the postings to write to
+	 */
+	private static void writePosting(int gap, int[] sorted, ByteArrayOutputStream positions, RegionBuffer.Writer out) {
+		positions.reset();
+		for(int j = 0; j < sorted.length; j++) {
+			if(j == 0) {
+				VByte.writeSigned(sorted[j], positions);
+			} else {
+				VByte.write(sorted[j] - sorted[j - 1], positions);
+			}
+		}
+		VByte.write(gap, out);
+		VByte.write(sorted.length, out);
+		VByte.write(positions.size(), out);
+		out.write(positions.toByteArray(), 0, positions.size());
+	}
+
+	/**
+	 * returns the positions in either of two sorted arrays, in order and once each
+	 */
+	private static int[] union(int[] a, int[] b) {
+		int[] union = new int[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while(i < a.length || j < b.length) {
+			if(j == b.length || (i < a.length && a[i] < b[j])) {
+				union[size++] = a[i++];
+			} else if(i == a.length || b[j] < a[i]) {
+				union[size++] = b[j++];
+			} else {
+				union[size++] = a[i++];
+				j++;
+			}
+		}
+		return Arrays.copyOf(union, size);
+	}
+
+	/**
+	 * Writes the segment to a directory so it can be opened later. Removed
+	 * locations are purged first.
+	 * @param directory the directory to write the index files to
+	 * @throws IOException
+	 */
+	public void write(Path directory) throws IOException {
+		if(!deleted.isEmpty()) {
+			purge().write(directory);
+			return;
+		}
+		Files.createDirectories(directory);
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(TERMS))))) {
+			out.writeInt(terms.size());
+			for(int i = 0; i < terms.size(); i++) {
+				writeString(terms.term(i), out);
+				out.writeLong(offsets[i]);
+				out.writeInt(terms.frequency(i));
+			}
+		}
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(DOCUMENTS))))) {
+			out.writeInt(locations.length);
+			for(int i = 0; i < locations.length; i++) {
+				writeString(locations[i], out);
+				out.writeInt(totals[i]);
+			}
+		}
+		try(FileChannel channel = FileChannel.open(directory.resolve(POSTINGS), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			postings.writeTo(channel);
+		}
+	}
+
+	/**
+	 * Opens a segment written by {@link #write(Path)}. The posting lists are
+	 * memory-mapped in windows rather than read into the heap.
+	 * @param directory the directory holding the index files
+	 * @return the segment
+	 * @throws IOException
+	 */
+	public static IndexSegment open(Path directory) throws IOException {
+		TermDictionary terms;
+		long[] offsets;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(TERMS))))) {
+			String[] words = new String[in.readInt()];
+			offsets = new long[words.length];
+			int[] frequencies = new int[words.length];
+			for(int i = 0; i < words.length; i++) {
+				words[i] = readString(in);
+				offsets[i] = in.readLong();
+				frequencies[i] = in.readInt();
+			}
+			terms = new TermDictionary(words, frequencies);
+		}
+		String[] locations;
+		int[] totals;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(DOCUMENTS))))) {
+			locations = new String[in.readInt()];
+			totals = new int[locations.length];
+			for(int i = 0; i < locations.length; i++) {
+				locations[i] = readString(in);
+				totals[i] = in.readInt();
+			}
+		}
+		try(FileChannel channel = FileChannel.open(directory.resolve(POSTINGS), StandardOpenOption.READ)) {
+			return new IndexSegment(terms, offsets, locations, totals, RegionBuffer.map(channel));
+		}
+	}
+
+	/**
+	 * writes a string as the length of its UTF-8 bytes followed by the bytes
+	 * @param string the string
+	 * @param out the stream to write to
+	 * @throws IOException
+	 */
+	private static void writeString(String string, DataOutputStream out) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * reads a string written by {@link #writeString(String, DataOutputStream)}
+	 * @param in the stream to read from
+	 * @return the string
+	 * @throws IOException
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void addWord(String word, String document, int position) {
+		throw new UnsupportedOperationException("Index segments are immutable");
+	}
+
+	@Override
+	public void addAll(InvertedIndex other) {
+		throw new UnsupportedOperationException("Index segments are immutable");
+	}
+
+	@Override
+	public void removeAll(Collection<String> locations) {
+		throw new UnsupportedOperationException("Index segments are immutable");
+	}
+
+	@Override
+	public IndexSegment freeze() {
+		return this;
+	}
+
+	/**
+	 * Refuses the cache, since a partial search already finds the words under
+	 * a prefix as one range of word ids.
+	 */
+	@Override
+	public void setPrefixCache(PrefixCache prefixCache) {
+		throw new UnsupportedOperationException("Index segments do not cache prefixes");
+	}
+
+	/**
+	 * returns a segment without the locations, sharing this segment's tables and
+	 * postings and marking the locations as tombstones
+	 * @param locations the documents to remove
+	 * @return the segment without the locations, or this segment if it has none of them
+	 */
+	public IndexSegment delete(Collection<String> locations) {
+		BitSet removed = (BitSet) deleted.clone();
+		for(String location : locations) {
+			int id = Arrays.binarySearch(this.locations, location);
+			if(id >= 0) {
+				removed.set(id);
+			}
+		}
+		if(removed.equals(deleted)) {
+			return this;
+		}
+		return new IndexSegment(terms, offsets, this.locations, totals, postings, removed);
+	}
+
+	/**
+	 * returns a segment holding only the locations that are not tombstones,
+	 * rewriting the postings if there are any
+	 * @return the purged segment, or this segment if nothing was removed
+	 */
+	public IndexSegment purge() {
+		return deleted.isEmpty() ? this : merge(Collections.singletonList(this));
+	}
+
+	/**
+	 * splits the words into ranges holding about the same number of bytes of
+	 * postings, for writing or reading them in parallel
+	 * @param ranges the number of ranges wanted
+	 * @return the first word of each range in order, fewer than asked for if
+	 * there are not enough words
+	 */
+	public List<String> split(int ranges) {
+		ArrayList<String> firsts = new ArrayList<String>();
+		long total = postings.size();
+		for(int term = 0; term < terms.size(); term++) {
+			if(offsets[term] >= total * firsts.size() / ranges) {
+				firsts.add(terms.term(term));
+			}
+		}
+		return firsts;
+	}
+
+	/**
+	 * returns the number of locations marked as tombstones
+	 * @return the number of removed locations
+	 */
+	public int deletedCount() {
+		return deleted.cardinality();
+	}
+
+	/**
+	 * returns the number of locations stored, including removed ones
+	 * @return the number of location ids
+	 */
+	public int locationCount() {
+		return locations.length;
+	}
+
+	@Override
+	protected ArrayList<SearchResult> exactMatches(TreeSet<String> queryWords) {
+		ScoreAccumulator scores = ScoreAccumulator.get(locations.length);
+		for(String word : queryWords) {
+			int term = terms.id(word);
+			if(term >= 0) {
+				searchStorer(term, scores);
+			}
+		}
+		return scores.results(Arrays.asList(locations), totals);
+	}
+
+	/**
+	 * Reads the number of postings under the prefixes from the term dictionary
+	 * first, returning at once if there are none and otherwise making room for
+	 * that many matched locations before any posting list is decoded.
+	 */
+	@Override
+	protected ArrayList<SearchResult> partialMatches(TreeSet<String> queryWords) {
+		long postings = 0;
+		for(String word : queryWords) {
+			postings += terms.prefixFrequency(word);
+		}
+		if(postings == 0) {
+			return new ArrayList<SearchResult>();
+		}
+		ScoreAccumulator scores = ScoreAccumulator.get(locations.length);
+		scores.reserve(postings);
+		for(String word : queryWords) {
+			for(int term = terms.first(word), end = terms.end(word); term < end; term++) {
+				searchStorer(term, scores);
+			}
+		}
+		return scores.results(Arrays.asList(locations), totals);
+	}
+
+	/**
+	 * returns the number of words stored, counting every position
+	 * @return the summed word count of all locations
+	 */
+	public long wordCount() {
+		long count = 0;
+		for(int id = 0; id < totals.length; id++) {
+			if(!deleted.get(id)) {
+				count += totals[id];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * adds the count of every location in a posting list to its score
+	 * @param term the id of the word
+	 * @param scores the counts summed so far, by location id
+	 */
+	private void searchStorer(int term, ScoreAccumulator scores) {
+		VByte.Reader reader = new VByte.Reader(postings, offsets[term]);
+		int size = reader.read();
+		int document = 0;
+		for(int i = 0; i < size; i++) {
+			document += reader.read();
+			int count = reader.read();
+			reader.skip(reader.read());
+			if(!deleted.get(document)) {
+				scores.add(document, count);
+			}
+		}
+	}
+
+	/**
+	 * returns the positions of a location in the posting list of a word
+	 * @param word the word in document
+	 * @param location the document
+	 * @return the positions, or null if the word is not in the location
+	 */
+	private int[] decode(String word, String location) {
+		int term = terms.id(word);
+		int id = Arrays.binarySearch(locations, location);
+		if(term < 0 || id < 0 || deleted.get(id)) {
+			return null;
+		}
+		VByte.Reader reader = new VByte.Reader(postings, offsets[term]);
+		int size = reader.read();
+		int document = 0;
+		for(int i = 0; i < size && document <= id; i++) {
+			document += reader.read();
+			int count = reader.read();
+			int length = reader.read();
+			if(document == id) {
+				int[] positions = new int[count];
+				for(int j = 0; j < count; j++) {
+					positions[j] = j == 0 ? reader.readSigned() : positions[j - 1] + reader.read();
+				}
+				return positions;
+			}
+			reader.skip(length);
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the words straight from the posting lists, without building a
+	 * tree of them first.
+	 */
+	@Override
+	protected void output(JSONStreamWriter writer) throws IOException {
+		output(writer, null, null);
+	}
+
+	/**
+	 * writes the words from one word up to another as a JSON object, straight
+	 * from the posting lists
+	 * @param writer the writer to use
+	 * @param from the first word to write, or null to start at the first word
+	 * @param to the word to stop before, or null to write up to the last word
+	 * @throws IOException
+	 */
+	public void output(JSONStreamWriter writer, String from, String to) throws IOException {
+		int end = to == null ? terms.size() : terms.first(to);
+		writer.beginObject();
+		for(int term = from == null ? 0 : terms.first(from); term < end; term++) {
+			VByte.Reader reader = new VByte.Reader(postings, offsets[term]);
+			int size = reader.read();
+			int document = 0;
+			boolean named = false;
+			for(int i = 0; i < size; i++) {
+				document += reader.read();
+				int count = reader.read();
+				int length = reader.read();
+				if(deleted.get(document)) {
+					reader.skip(length);
+					continue;
+				}
+				if(!named) {
+					writer.name(terms.term(term));
+					writer.beginObject();
+					named = true;
+				}
+				writer.name(locations[document]);
+				writer.beginArray();
+				int position = 0;
+				for(int j = 0; j < count; j++) {
+					position = j == 0 ? reader.readSigned() : position + reader.read();
+					writer.value(position);
+				}
+				writer.endArray();
+			}
+			if(named) {
+				writer.endObject();
+			}
+		}
+		writer.endObject();
+	}
+
+	@Override
+	public void countWords(Path file) throws IOException {
+		asTree().countWords(file);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return size(word) > 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return decode(word, location) != null;
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		int[] positions = decode(word, location);
+		return positions != null && Arrays.binarySearch(positions, position) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return deleted.isEmpty() ? terms.size() : getWords().size();
+	}
+
+	@Override
+	public int size(String word) {
+		int term = terms.id(word);
+		if(term < 0) {
+			return 0;
+		}
+		return deleted.isEmpty() ? terms.frequency(term) : getLocations(word).size();
+	}
+
+	@Override
+	public int size(String word, String location) {
+		int[] positions = decode(word, location);
+		return positions == null ? 0 : positions.length;
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		if(deleted.isEmpty()) {
+			return Collections.unmodifiableNavigableSet(new TreeSet<String>(terms.terms()));
+		}
+		TreeSet<String> words = new TreeSet<String>();
+		for(int term = 0; term < terms.size(); term++) {
+			if(!getLocations(terms.term(term)).isEmpty()) {
+				words.add(terms.term(term));
+			}
+		}
+		return Collections.unmodifiableNavigableSet(words);
+	}
+
+	@Override
+	public Set<String> getLocations() {
+		TreeSet<String> documents = new TreeSet<String>();
+		for(int id = 0; id < locations.length; id++) {
+			if(!deleted.get(id)) {
+				documents.add(locations[id]);
+			}
+		}
+		return Collections.unmodifiableSet(documents);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		TreeSet<String> documents = new TreeSet<String>();
+		int term = terms.id(word);
+		if(term >= 0) {
+			VByte.Reader reader = new VByte.Reader(postings, offsets[term]);
+			int size = reader.read();
+			int document = 0;
+			for(int i = 0; i < size; i++) {
+				document += reader.read();
+				reader.read();
+				reader.skip(reader.read());
+				if(!deleted.get(document)) {
+					documents.add(locations[document]);
+				}
+			}
+		}
+		return Collections.unmodifiableSet(documents);
+	}
+
+	@Override
+	public SortedSet<Integer> getPositions(String word, String location) {
+		TreeSet<Integer> found = new TreeSet<Integer>();
+		int[] positions = decode(word, location);
+		if(positions != null) {
+			for(int position : positions) {
+				found.add(position);
+			}
+		}
+		return Collections.unmodifiableSortedSet(found);
+	}
+
+	@Override
+	public int getTotal(String location) {
+		int id = Arrays.binarySearch(locations, location);
+		return id < 0 || deleted.get(id) ? 0 : totals[id];
+	}
+
+	@Override
+	protected InvertedIndex asTree() {
+		InvertedIndex tree = new InvertedIndex();
+		for(int term = 0; term < terms.size(); term++) {
+			VByte.Reader reader = new VByte.Reader(postings, offsets[term]);
+			int size = reader.read();
+			int document = 0;
+			for(int i = 0; i < size; i++) {
+				document += reader.read();
+				int count = reader.read();
+				int length = reader.read();
+				if(deleted.get(document)) {
+					reader.skip(length);
+					continue;
+				}
+				int position = 0;
+				for(int j = 0; j < count; j++) {
+					position = j == 0 ? reader.readSigned() : position + reader.read();
+					tree.addWord(terms.term(term), locations[document], position);
+				}
+			}
+		}
+		return tree;
+	}
+
+	@Override
+	public String toString() {
+		return asTree().toString();
+	}
+
+	/**
+	 * Walks the posting list of a word in a segment being merged, stopping at
+	 * each location that was not removed with its merged id.
+	 */
+	private static class Cursor {
+		private final VByte.Reader reader;
+		private final int[] ids;
+		private int remaining;
+		private int document;
+		private int count;
+		private int length;
+		private int id;
+
+		/**
+		 * Starts at the first location of a posting list
+		 * @param segment the segment
+		 * @param term the id of the word in the segment
+		 * @param ids the merged id of each location of the segment, or -1 if it was removed
+		 */
+		private Cursor(IndexSegment segment, int term, int[] ids) {
+			this.reader = new VByte.Reader(segment.postings, segment.offsets[term]);
+			this.ids = ids;
+			this.remaining = reader.read();
+			this.document = 0;
+			advance();
+		}
+
+		/**
+		 * decodes the positions of the current location and moves to the next
+		 * @return the positions
+		 */
+		private int[] take() {
+			int[] positions = new int[count];
+			for(int j = 0; j < count; j++) {
+				positions[j] = j == 0 ? reader.readSigned() : positions[j - 1] + reader.read();
+			}
+			advance();
+			return positions;
+		}
+
+		/**
+		 * moves to the next location without decoding the positions of this one
+		 */
+		private void skip() {
+			reader.skip(length);
+			advance();
+		}
+
+		/**
+		 * reads the head of the next location that was not removed, setting
+		 * id to -1 at the end of the list
+		 */
+		private void advance() {
+			while(remaining > 0) {
+				remaining--;
+				document += reader.read();
+				count = reader.read();
+				length = reader.read();
+				if(ids[document] >= 0) {
+					id = ids[document];
+					return;
+				}
+				reader.skip(length);
+			}
+			id = -1;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the files and bytes read while building an index, so the rate of
+ * ingestion can be reported once it finishes. Workers add to the counts
+ * without contending on a shared lock.
+ */
+public class IngestStats {
+	private final long start;
+	private final LongAdder files;
+	private final LongAdder bytes;
+	private volatile long end;
+
+	/**
+	 * Starts counting from now.
+	 */
+	public IngestStats() {
+		start = System.nanoTime();
+		files = new LongAdder();
+		bytes = new LongAdder();
+		end = 0;
+	}
+
+	/**
+	 * counts a file that was read
+	 * @param size the size of the file in bytes
+	 */
+	public void add(long size) {
+		files.increment();
+		bytes.add(size);
+	}
+
+	/**
+	 * stops the clock once every file has been read
+	 */
+	public void finish() {
+		end = System.nanoTime();
+	}
+
+	/**
+	 * returns the number of files read
+	 * @return number of files
+	 */
+	public long files() {
+		return files.sum();
+	}
+
+	/**
+	 * returns the number of bytes read
+	 * @return number of bytes
+	 */
+	public long bytes() {
+		return bytes.sum();
+	}
+
+	/**
+	 * returns the time taken, up to now if not finished
+	 * @return the elapsed seconds
+	 */
+	public double seconds() {
+		return ((end == 0 ? System.nanoTime() : end) - start) / 1e9;
+	}
+
+	@Override
+	public String toString() {
+		double seconds = Math.max(seconds(), 1e-9);
+		return String.format("Indexed %d files (%.1f MB) in %.2f s: %.0f files/s, %.2f MB/s", files(), bytes() / 1e6,
+				seconds, files() / seconds, bytes() / 1e6 / seconds);
+	}
+}
@@ -1,8 +1,18 @@
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -11,6 +21,8 @@ public class InvertedIndex {
 		
 	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
 	private final TreeMap<String, Integer> totalWords;
+	private volatile PrefixCache prefixCache;
+	private final AtomicLong generation;
 	
 	/**
 	 * Initializes the inverted index.
@@ -18,6 +30,51 @@ public class InvertedIndex {
 	public InvertedIndex() {
 		this.index = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
 		this.totalWords = new TreeMap<String, Integer>();
+		this.prefixCache = null;
+		this.generation = new AtomicLong();
+	}
+	
+	/**
+	 * returns the number of writes made to the index so far. a search result
+	 * found at one generation is still current while the generation is unchanged.
+	 * @return the current generation
+	 */
+	public long generation() {
+		return generation.get();
+	}
+	
+	/**
+	 * marks a write as done, called once the added words can be found
+	 */
+	protected void advanceGeneration() {
+		generation.incrementAndGet();
+	}
+	
+	/**
+	 * caches the merged postings of prefixes partial searches keep asking for
+	 * @param prefixCache the cache to use, or null to stop caching
+	 */
+	public void setPrefixCache(PrefixCache prefixCache) {
+		this.prefixCache = prefixCache;
+	}
+	
+	/**
+	 * returns the cache of partial search prefixes
+	 * @return the cache, or null if prefixes are not cached
+	 */
+	public PrefixCache getPrefixCache() {
+		return prefixCache;
+	}
+	
+	/**
+	 * removes the cached prefixes of a word that was added
+	 * @param word the word added to the index
+	 */
+	protected void invalidatePrefixes(String word) {
+		PrefixCache cache = prefixCache;
+		if(cache != null) {
+			cache.invalidate(word);
+		}
 	}
 		
 	/**
@@ -32,6 +89,8 @@ public class InvertedIndex {
  		if(index.get(word).get(document).add(position)) {
  			totalWords.put(document, totalWords.getOrDefault(document, 0) + 1);
  		}
+ 		invalidatePrefixes(word);
+ 		advanceGeneration();
 	}
 	
 	/**
@@ -40,6 +99,86 @@ public class InvertedIndex {
 	 * @return an ArrayList of the searchresults from the SearchResult class 
 	 */
 	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords) {
+		ArrayList<SearchResult> finalResult = exactMatches(queryWords);
+		Collections.sort(finalResult);
+		return finalResult;
+	}
+
+	/**
+	 * performs an partial search on a word in the inverted index.
+	 * @param queryWords the words in the query
+	 * @return an ArrayList of the searchresults from the SearchResult class 
+	 */
+	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords) {
+		ArrayList<SearchResult> finalResult = partialMatches(queryWords);
+		Collections.sort(finalResult);
+		return finalResult;
+	}
+	
+	/**
+	 * performs an exact search and returns one page of the best results
+	 * @param queryWords the words in the query
+	 * @param offset the number of best results to skip
+	 * @param limit the most results to return
+	 * @return the results ranked offset to offset + limit, in sorted order
+	 */
+	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords, int offset, int limit) {
+		return top(exactMatches(queryWords), offset, limit);
+	}
+	
+	/**
+	 * performs a partial search and returns one page of the best results
+	 * @param queryWords the words in the query
+	 * @param offset the number of best results to skip
+	 * @param limit the most results to return
+	 * @return the results ranked offset to offset + limit, in sorted order
+	 */
+	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords, int offset, int limit) {
+		return top(partialMatches(queryWords), offset, limit);
+	}
+	
+	/**
+	 * returns the results ranked offset to offset + limit. keeps only the best
+	 * offset + limit results in a bounded heap whose head is the worst of them,
+	 * so only those are sorted instead of every match.
+	 * @param matches the unsorted search results
+	 * @param offset the number of best results to skip
+	 * @param limit the most results to return
+	 * @return the page of results in sorted order
+	 * @throws IllegalArgumentException if the offset is negative
+	 */
+	private static ArrayList<SearchResult> top(ArrayList<SearchResult> matches, int offset, int limit) {
+		if(offset < 0) {
+			throw new IllegalArgumentException("Negative offset " + offset);
+		}
+		if(offset >= matches.size() || limit <= 0) {
+			return new ArrayList<SearchResult>();
+		}
+		if(limit >= matches.size() - offset) {
+			Collections.sort(matches);
+			return new ArrayList<SearchResult>(matches.subList(offset, matches.size()));
+		}
+		int size = offset + limit;
+		PriorityQueue<SearchResult> best = new PriorityQueue<SearchResult>(size + 1, Collections.reverseOrder());
+		for(SearchResult result : matches) {
+			if(best.size() < size) {
+				best.add(result);
+			} else if(result.compareTo(best.peek()) < 0) {
+				best.poll();
+				best.add(result);
+			}
+		}
+		ArrayList<SearchResult> page = new ArrayList<SearchResult>(best);
+		Collections.sort(page);
+		return new ArrayList<SearchResult>(page.subList(offset, page.size()));
+	}
+	
+	/**
+	 * finds the results of an exact search without sorting them
+	 * @param queryWords the words in the query
+	 * @return the search results in the order they were found
+	 */
+	protected ArrayList<SearchResult> exactMatches(TreeSet<String> queryWords) {
 		ArrayList<SearchResult> finalResult = new ArrayList<SearchResult>();
 		HashMap<String, SearchResult> searchResults = new HashMap<>();
 		for(String word : queryWords) {
@@ -47,19 +186,32 @@ public class InvertedIndex {
 				searchStorer(word, searchResults, finalResult);
 			}
 		}		
-		Collections.sort(finalResult);
 		return finalResult;
 	}
 
 	/**
-	 * performs an partial search on a word in the inverted index.
+	 * finds the results of a partial search without sorting them
 	 * @param queryWords the words in the query
-	 * @return an ArrayList of the searchresults from the SearchResult class 
+	 * @return the search results in the order they were found
 	 */
-	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords) {
+	protected ArrayList<SearchResult> partialMatches(TreeSet<String> queryWords) {
 		ArrayList<SearchResult> finalResult = new ArrayList<SearchResult>();
 		HashMap<String, SearchResult> searchResults = new HashMap<>();
+		PrefixCache cache = prefixCache;
 		for(String word : queryWords) {
+			PrefixCache.Union union = cache == null ? null : cache.get(word);
+			if(union == null && cache != null && cache.admit(word)) {
+				long version = cache.version();
+				union = new PrefixCache.Union(prefixCounts(word));
+				// an index that has handed its cache on, such as an old snapshot, must not fill it
+				if(prefixCache == cache) {
+					cache.put(word, union, version);
+				}
+			}
+			if(union != null) {
+				union.addTo(searchResults, finalResult, totalWords);
+				continue;
+			}
 			for(String words: index.tailMap(word).keySet()) {
 				if(words.startsWith(word)) {
 					searchStorer(words, searchResults,finalResult);
@@ -68,23 +220,41 @@ public class InvertedIndex {
 				}
 			}
 		}
-		Collections.sort(finalResult);
 		return finalResult;
 	}
 	
+	/**
+	 * sums the counts of every word starting with a prefix by location
+	 * @param prefix the prefix
+	 * @return the count of each location, in the order they were found
+	 */
+	private LinkedHashMap<String, Integer> prefixCounts(String prefix) {
+		LinkedHashMap<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		for(Map.Entry<String, TreeMap<String, TreeSet<Integer>>> word : index.tailMap(prefix).entrySet()) {
+			if(!word.getKey().startsWith(prefix)) {
+				break;
+			}
+			for(Map.Entry<String, TreeSet<Integer>> entry : word.getValue().entrySet()) {
+				counts.merge(entry.getKey(), entry.getValue().size(), Integer::sum);
+			}
+		}
+		return counts;
+	}
+	
 	/**
 	 * checks if location exists and updates count and score
 	 * @param queryWord the words for the searchresult
 	 * @param searchResult TreeMap of location and searchResult
 	 */
 	private void searchStorer(String queryWord, HashMap<String, SearchResult> searchResult, ArrayList<SearchResult> finalResults) {	
-		for(String location : index.get(queryWord).keySet()) {	
-			int count = index.get(queryWord).get(location).size();
-			if(searchResult.containsKey(location)) {
-				searchResult.get(location).updateCount(count);
+		for(Map.Entry<String, TreeSet<Integer>> entry : index.get(queryWord).entrySet()) {	
+			String location = entry.getKey();
+			int count = entry.getValue().size();
+			SearchResult result = searchResult.get(location);
+			if(result != null) {
+				result.updateCount(count);
 			} else {
-				
-				SearchResult result = new SearchResult(location, count, totalWords.get(location));
+				result = new SearchResult(location, count, totalWords.get(location));
 				searchResult.put(location, result);	
 				finalResults.add(result);
 			}
@@ -92,11 +262,13 @@ public class InvertedIndex {
 	}
 	
 	/**
-	 * adds all words and locations from InvertedIndex local to InvertedIndex index
-	 * @param local the InvertedIndex to add into index
+	 * adds all words and locations from InvertedIndex other to InvertedIndex index
+	 * @param other the InvertedIndex to add into index
 	 */
-	public void addAll(InvertedIndex local) {
+	public void addAll(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
 		for(String word: local.index.keySet()) {
+			invalidatePrefixes(word);
 			if(this.index.containsKey(word)) {
 				for(String path: local.index.get(word).keySet()) {
 					TreeSet<Integer> integers = local.index.get(word).get(path);
@@ -120,6 +292,114 @@ public class InvertedIndex {
 				this.totalWords.put(locations, locationCount);
 			}
 		}
+		advanceGeneration();
+	}
+	
+	/**
+	 * removes a location and every word stored for it
+	 * @param location the document to remove
+	 */
+	public void remove(String location) {
+		removeAll(Collections.singleton(location));
+	}
+	
+	/**
+	 * removes locations and every word stored for them, in one pass over the words
+	 * @param locations the documents to remove
+	 */
+	public void removeAll(Collection<String> locations) {
+		if(locations.isEmpty()) {
+			return;
+		}
+		HashSet<String> removed = new HashSet<String>(locations);
+		Iterator<Map.Entry<String, TreeMap<String, TreeSet<Integer>>>> words = index.entrySet().iterator();
+		while(words.hasNext()) {
+			Map.Entry<String, TreeMap<String, TreeSet<Integer>>> word = words.next();
+			if(word.getValue().keySet().removeAll(removed)) {
+				// a removed tree entry may be reused for the next word, so read the word first
+				invalidatePrefixes(word.getKey());
+				if(word.getValue().isEmpty()) {
+					words.remove();
+				}
+			}
+		}
+		totalWords.keySet().removeAll(removed);
+		advanceGeneration();
+	}
+	
+	/**
+	 * replaces the words of every location in other with the words other holds
+	 * for it, so a page crawled again or a file changed since it was read keeps
+	 * no stale postings. the locations are removed and then added, so a search
+	 * made in between may not find them unless the index overrides this.
+	 * @param other the index of the locations read again
+	 */
+	public void update(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
+		removeAll(local.getLocations());
+		addAll(local);
+	}
+	
+	/**
+	 * returns a new index holding the words and locations of this index except
+	 * the given locations, leaving this index untouched. postings of words not
+	 * found in those locations are shared with this index rather than copied, so
+	 * neither index may be changed afterwards.
+	 * @param locations the documents to leave out
+	 * @return the index without the locations
+	 */
+	public InvertedIndex without(Collection<String> locations) {
+		HashSet<String> removed = new HashSet<String>(locations);
+		InvertedIndex result = new InvertedIndex();
+		for(Map.Entry<String, TreeMap<String, TreeSet<Integer>>> word : this.index.entrySet()) {
+			TreeMap<String, TreeSet<Integer>> documents = word.getValue();
+			for(String location : removed) {
+				if(documents.containsKey(location)) {
+					documents = new TreeMap<String, TreeSet<Integer>>(documents);
+					documents.keySet().removeAll(removed);
+					break;
+				}
+			}
+			if(!documents.isEmpty()) {
+				result.index.put(word.getKey(), documents);
+			}
+		}
+		result.totalWords.putAll(this.totalWords);
+		result.totalWords.keySet().removeAll(removed);
+		return result;
+	}
+	
+	/**
+	 * returns a new index holding the words and locations of this index and
+	 * other, leaving this index untouched. postings of words and locations that
+	 * other does not touch are shared with this index rather than copied, so
+	 * neither index may be changed afterwards.
+	 * @param other the InvertedIndex to merge with this one
+	 * @return the merged index
+	 */
+	public InvertedIndex merged(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
+		InvertedIndex result = new InvertedIndex();
+		result.index.putAll(this.index);
+		result.totalWords.putAll(this.totalWords);
+		for(String word : local.index.keySet()) {
+			TreeMap<String, TreeSet<Integer>> documents = new TreeMap<String, TreeSet<Integer>>();
+			if(this.index.containsKey(word)) {
+				documents.putAll(this.index.get(word));
+			}
+			for(String path : local.index.get(word).keySet()) {
+				TreeSet<Integer> positions = new TreeSet<Integer>(local.index.get(word).get(path));
+				if(documents.containsKey(path)) {
+					positions.addAll(documents.get(path));
+				}
+				documents.put(path, positions);
+			}
+			result.index.put(word, documents);
+		}
+		for(String locations : local.totalWords.keySet()) {
+			result.totalWords.put(locations, result.totalWords.getOrDefault(locations, 0) + local.totalWords.get(locations));
+		}
+		return result;
 	}
 	
 	/**
@@ -128,7 +408,43 @@ public class InvertedIndex {
 	 * @throws IOException
 	 */
 	public void output(Path outputfilepath) throws IOException {
-		TreeJSONWriter.asTripleNestedObject(index, outputfilepath);		
+		output(outputfilepath, true);
+	}
+	
+	/**
+	 * outputs the InvertedIndex index as pretty or compact JSON, gzipped if
+	 * the file name ends with .gz
+	 * @param outputfilepath the outfilepath
+	 * @param pretty true for one element per line, false for no whitespace
+	 * @throws IOException
+	 */
+	public void output(Path outputfilepath, boolean pretty) throws IOException {
+		try(JSONStreamWriter writer = JSONStreamWriter.open(outputfilepath, pretty)) {
+			output(writer);
+		}
+	}
+	
+	/**
+	 * writes every word, location and position as nested JSON objects
+	 * @param writer the writer to use
+	 * @throws IOException
+	 */
+	protected void output(JSONStreamWriter writer) throws IOException {
+		writer.beginObject();
+		for(Map.Entry<String, TreeMap<String, TreeSet<Integer>>> word : index.entrySet()) {
+			writer.name(word.getKey());
+			writer.beginObject();
+			for(Map.Entry<String, TreeSet<Integer>> location : word.getValue().entrySet()) {
+				writer.name(location.getKey());
+				writer.beginArray();
+				for(int position : location.getValue()) {
+					writer.value(position);
+				}
+				writer.endArray();
+			}
+			writer.endObject();
+		}
+		writer.endObject();
 	}
 	
 	/**
@@ -213,6 +529,76 @@ public class InvertedIndex {
 		return 0;
 	}
 	
+	/**
+	 * returns the words stored in the index
+	 * @return an unmodifiable view of the words in sorted order
+	 */
+	public NavigableSet<String> getWords() {
+		return Collections.unmodifiableNavigableSet(index.navigableKeySet());
+	}
+	
+	/**
+	 * returns the locations stored in the index
+	 * @return an unmodifiable view of the locations in sorted order
+	 */
+	public Set<String> getLocations() {
+		return Collections.unmodifiableSet(totalWords.keySet());
+	}
+	
+	/**
+	 * returns the locations a word is found in
+	 * @param word the word in document
+	 * @return an unmodifiable view of the locations, empty if the word is not stored
+	 */
+	public Set<String> getLocations(String word) {
+		TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+		if(documents != null) {
+			return Collections.unmodifiableSet(documents.keySet());
+		}
+		return Collections.emptySet();
+	}
+	
+	/**
+	 * returns the positions of a word in a location
+	 * @param word the word in document
+	 * @param location the document
+	 * @return an unmodifiable view of the positions, empty if none are stored
+	 */
+	public SortedSet<Integer> getPositions(String word, String location) {
+		TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+		if(documents != null && documents.containsKey(location)) {
+			return Collections.unmodifiableSortedSet(documents.get(location));
+		}
+		return Collections.emptySortedSet();
+	}
+	
+	/**
+	 * returns the number of words stored for a location
+	 * @param location the document
+	 * @return the word count, 0 if the location is not stored
+	 */
+	public int getTotal(String location) {
+		return totalWords.getOrDefault(location, 0);
+	}
+	
+	/**
+	 * builds an immutable, compressed copy of this index for searching once
+	 * nothing more will be added
+	 * @return the frozen index
+	 */
+	public IndexSegment freeze() {
+		return IndexSegment.freeze(this);
+	}
+	
+	/**
+	 * returns this index in the tree form addAll merges from. indexes that
+	 * keep their postings in another structure override this to build one.
+	 * @return an InvertedIndex holding the postings in its own TreeMaps
+	 */
+	protected InvertedIndex asTree() {
+		return this;
+	}
+	
 	/**
 	 * returns a string representation of inverted index "index"
 	 */
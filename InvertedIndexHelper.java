@@ -1,11 +1,7 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 public class InvertedIndexHelper {
 	
@@ -48,15 +44,11 @@ public class InvertedIndexHelper {
 	 */
 	public static void readFile(Path path, InvertedIndex index) throws IOException {
 		int position = 1;
-		try(BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8);) {
-			String line = null;
-			String pathName = path.toString();
-			Stemmer cleaner = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-			while((line = in.readLine()) != null) {
-				for(String stemmedWord : TextParser.parse(line)) {
-					index.addWord(cleaner.stem(stemmedWord).toString(), pathName, position++);
-				}
-			}
-		} 
+		TextTokenizer words = TextTokenizer.open(path);
+		String pathName = path.toString();
+		String word;
+		while((word = words.next()) != null) {
+			index.addWord(StemCache.stem(word), pathName, position++);
+		}
 	}
 }
@@ -0,0 +1,321 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes JSON straight into a large byte buffer as it goes, encoding strings
+ * as UTF-8 and numbers digit by digit, so nothing is allocated per element and
+ * the stream underneath is only written once the buffer is full.
+ *
+ * <p>In pretty mode the output is the same as {@link TreeJSONWriter}: every
+ * element on its own line, indented by tabs, with a space after each colon.
+ * In compact mode there is no whitespace at all. Like {@link TreeJSONWriter},
+ * strings are written as they are, without escaping.</p>
+ */
+public class JSONStreamWriter implements Closeable {
+	/** The size of the output buffer in bytes. */
+	public static final int BUFFER_SIZE = 1 << 20;
+
+	private static final byte[] SEPARATOR = System.lineSeparator().getBytes();
+
+	private final OutputStream out;
+	private final boolean pretty;
+	private final byte[] buffer;
+	private int size;
+	private boolean[] empty;
+	private int depth;
+	private boolean named;
+
+	/**
+	 * Creates a writer.
+	 * @param out the stream to write to, closed with the writer
+	 * @param pretty true to write one element per line, false to write no whitespace
+	 */
+	public JSONStreamWriter(OutputStream out, boolean pretty) {
+		this.out = out;
+		this.pretty = pretty;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.size = 0;
+		this.empty = new boolean[8];
+		this.depth = 0;
+		this.named = false;
+	}
+
+	/**
+	 * Opens a writer to a file, gzipping the output at the fastest level if the
+	 * file name ends with .gz, since JSON compresses well even then
+	 * @param path the file to write
+	 * @param pretty true to write one element per line, false to write no whitespace
+	 * @return the writer
+	 * @throws IOException
+	 */
+	public static JSONStreamWriter open(Path path, boolean pretty) throws IOException {
+		OutputStream out = Files.newOutputStream(path);
+		if(path.getFileName().toString().endsWith(".gz")) {
+			out = new GZIPOutputStream(out, 1 << 16) {
+				{
+					def.setLevel(Deflater.BEST_SPEED);
+				}
+			};
+		}
+		return new JSONStreamWriter(out, pretty);
+	}
+
+	/**
+	 * starts an object
+	 * @throws IOException
+	 */
+	public void beginObject() throws IOException {
+		begin('{');
+	}
+
+	/**
+	 * ends the current object
+	 * @throws IOException
+	 */
+	public void endObject() throws IOException {
+		end('}');
+	}
+
+	/**
+	 * starts an array
+	 * @throws IOException
+	 */
+	public void beginArray() throws IOException {
+		begin('[');
+	}
+
+	/**
+	 * ends the current array
+	 * @throws IOException
+	 */
+	public void endArray() throws IOException {
+		end(']');
+	}
+
+	/**
+	 * writes the name of the next member of the current object
+	 * @param name the name
+	 * @throws IOException
+	 */
+	public void name(String name) throws IOException {
+		element();
+		write('"');
+		write(name);
+		write('"');
+		write(':');
+		if(pretty) {
+			write(' ');
+		}
+		named = true;
+	}
+
+	/**
+	 * writes a number
+	 * @param value the number
+	 * @throws IOException
+	 */
+	public void value(int value) throws IOException {
+		element();
+		if(size + 11 > buffer.length) {
+			flush();
+		}
+		long number = value;
+		if(number < 0) {
+			buffer[size++] = '-';
+			number = -number;
+		}
+		digits(number, 1);
+	}
+
+	/**
+	 * writes a fixed-point number, such as 0.123400 for 123400 with scale 6
+	 * @param unscaled the number times 10 to the scale
+	 * @param scale the number of digits after the decimal point, at most 18
+	 * @throws IOException
+	 */
+	public void value(long unscaled, int scale) throws IOException {
+		element();
+		if(size + 42 > buffer.length) {
+			flush();
+		}
+		if(unscaled < 0) {
+			buffer[size++] = '-';
+			unscaled = -unscaled;
+		}
+		long power = 1;
+		for(int i = 0; i < scale; i++) {
+			power *= 10;
+		}
+		digits(unscaled / power, 1);
+		if(scale > 0) {
+			buffer[size++] = '.';
+			digits(unscaled % power, scale);
+		}
+	}
+
+	/**
+	 * writes a string value in quotes
+	 * @param value the string
+	 * @throws IOException
+	 */
+	public void value(String value) throws IOException {
+		element();
+		write('"');
+		write(value);
+		write('"');
+	}
+
+	/**
+	 * writes a number formatted elsewhere, as it is
+	 * @param number the formatted number
+	 * @throws IOException
+	 */
+	public void number(String number) throws IOException {
+		element();
+		write(number);
+	}
+
+	/**
+	 * writes the buffered bytes to the stream underneath
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		out.write(buffer, 0, size);
+		size = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * opens an object or array as the next element
+	 */
+	private void begin(char bracket) throws IOException {
+		element();
+		write(bracket);
+		if(pretty) {
+			write(SEPARATOR);
+		}
+		if(++depth == empty.length) {
+			empty = Arrays.copyOf(empty, depth * 2);
+		}
+		empty[depth] = true;
+	}
+
+	/**
+	 * closes the current object or array, on a new line after its last element
+	 */
+	private void end(char bracket) throws IOException {
+		if(pretty) {
+			if(!empty[depth]) {
+				write(SEPARATOR);
+			}
+			indent(depth - 1);
+		}
+		depth--;
+		write(bracket);
+	}
+
+	/**
+	 * writes the comma and indentation before an element, unless it is the
+	 * value of a name just written
+	 */
+	private void element() throws IOException {
+		if(named) {
+			named = false;
+			return;
+		}
+		if(depth > 0) {
+			if(!empty[depth]) {
+				write(',');
+				if(pretty) {
+					write(SEPARATOR);
+				}
+			}
+			empty[depth] = false;
+			if(pretty) {
+				indent(depth);
+			}
+		}
+	}
+
+	/**
+	 * writes the digits of a non-negative number into the buffer, padded with
+	 * zeros to a width. the buffer must have room for them.
+	 */
+	private void digits(long number, int width) {
+		int digits = 1;
+		for(long power = 10; power <= number && digits < 19; power *= 10) {
+			digits++;
+		}
+		digits = Math.max(digits, width);
+		for(int i = size + digits - 1; i >= size; i--) {
+			buffer[i] = (byte) ('0' + number % 10);
+			number /= 10;
+		}
+		size += digits;
+	}
+
+	private void indent(int times) throws IOException {
+		for(int i = 0; i < times; i++) {
+			write('\t');
+		}
+	}
+
+	private void write(char c) throws IOException {
+		if(size == buffer.length) {
+			flush();
+		}
+		buffer[size++] = (byte) c;
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		for(byte b : bytes) {
+			write((char) b);
+		}
+	}
+
+	/**
+	 * writes a string as UTF-8, with ? in place of a surrogate without its pair
+	 */
+	private void write(String text) throws IOException {
+		int length = text.length();
+		for(int i = 0; i < length; i++) {
+			if(size + 4 > buffer.length) {
+				flush();
+			}
+			char c = text.charAt(i);
+			if(c < 0x80) {
+				buffer[size++] = (byte) c;
+			} else if(c < 0x800) {
+				buffer[size++] = (byte) (0xC0 | c >> 6);
+				buffer[size++] = (byte) (0x80 | c & 0x3F);
+			} else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int code = Character.toCodePoint(c, text.charAt(++i));
+				buffer[size++] = (byte) (0xF0 | code >> 18);
+				buffer[size++] = (byte) (0x80 | code >> 12 & 0x3F);
+				buffer[size++] = (byte) (0x80 | code >> 6 & 0x3F);
+				buffer[size++] = (byte) (0x80 | code & 0x3F);
+			} else if(Character.isSurrogate(c)) {
+				buffer[size++] = '?';
+			} else {
+				buffer[size++] = (byte) (0xE0 | c >> 12);
+				buffer[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+				buffer[size++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Measures the throughput in MB/s of writing an index as JSON with
+ * {@link TreeJSONWriter}, as -index used to, against {@link JSONStreamWriter}
+ * in pretty, compact and gzipped mode, and from a frozen {@link IndexSegment}.
+ * Throughput is counted in bytes of uncompressed pretty JSON, so the modes are
+ * compared on the same index, and the pretty outputs are checked to be the
+ * same bytes as the legacy output.
+ */
+public class JSONWriterBenchmark {
+
+	/**
+	 * Copies the words of an index into the maps TreeJSONWriter writes.
+	 *
+	 * @param index the index
+	 * @return the words, locations and positions of the index
+	 */
+	private static TreeMap<String, TreeMap<String, TreeSet<Integer>>> copy(InvertedIndex index) {
+		TreeMap<String, TreeMap<String, TreeSet<Integer>>> words = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
+		for(String word : index.getWords()) {
+			TreeMap<String, TreeSet<Integer>> locations = new TreeMap<String, TreeSet<Integer>>();
+			for(String location : index.getLocations(word)) {
+				locations.put(location, new TreeSet<Integer>(index.getPositions(word, location)));
+			}
+			words.put(word, locations);
+		}
+		return words;
+	}
+
+	/**
+	 * an output to measure
+	 */
+	private interface Output {
+		void write(Path path) throws IOException;
+	}
+
+	/**
+	 * writes the output a few times and reports the best time
+	 * @return the file written
+	 */
+	private static Path measure(String name, Output output, Path path, long bytes, int rounds) throws IOException {
+		long best = Long.MAX_VALUE;
+		for(int round = -1; round < rounds; round++) {
+			Files.deleteIfExists(path);
+			long start = System.nanoTime();
+			output.write(path);
+			long elapsed = System.nanoTime() - start;
+			if(round >= 0) {
+				best = Math.min(best, elapsed);
+			}
+		}
+		System.out.printf("%-10s %8.1f MB/s %10d bytes %8.3f s%n", name, bytes / (best / 1e9) / 1e6, Files.size(path),
+				best / 1e9);
+		return path;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args the number of postings, default 5000000, and the number of rounds, default 3
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int postings = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		InvertedIndex index = new InvertedIndex();
+		IndexMemoryBenchmark.fill(index, postings);
+		TreeMap<String, TreeMap<String, TreeSet<Integer>>> words = copy(index);
+		IndexSegment segment = index.freeze();
+		Path directory = Files.createTempDirectory("json");
+
+		Path legacy = directory.resolve("legacy.json");
+		TreeJSONWriter.asTripleNestedObject(words, legacy);
+		long bytes = Files.size(legacy);
+		System.out.printf("%d postings, %d words%n", postings, words.size());
+
+		measure("legacy", path -> TreeJSONWriter.asTripleNestedObject(words, path), legacy, bytes, rounds);
+		Path pretty = measure("pretty", path -> index.output(path, true), directory.resolve("pretty.json"), bytes, rounds);
+		measure("compact", path -> index.output(path, false), directory.resolve("compact.json"), bytes, rounds);
+		measure("gzip", path -> index.output(path, true), directory.resolve("pretty.json.gz"), bytes, rounds);
+		Path frozen = measure("segment", path -> segment.output(path, true), directory.resolve("segment.json"), bytes, rounds);
+
+		byte[] expected = Files.readAllBytes(legacy);
+		System.out.println("pretty same as legacy: " + Arrays.equals(expected, Files.readAllBytes(pretty)));
+		System.out.println("segment same as legacy: " + Arrays.equals(expected, Files.readAllBytes(frozen)));
+		try(java.util.stream.Stream<Path> files = Files.list(directory)) {
+			for(Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
@@ -0,0 +1,121 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe map holding at most a fixed number of entries. Once full, the
+ * entry used least recently is evicted to make room. Lookups are counted as
+ * hits or misses so the cache can be tuned.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class LRUCache<K, V> {
+	private final int capacity;
+	private final LinkedHashMap<K, V> entries;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param capacity the most entries to keep
+	 */
+	public LRUCache(int capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > LRUCache.this.capacity;
+			}
+		};
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	/**
+	 * Returns the value of a key and marks it as the most recently used.
+	 *
+	 * @param key the key to look up
+	 * @return the value, or null if it is not cached
+	 */
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+		if(value != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return value;
+	}
+
+	/**
+	 * Adds or replaces the value of a key, evicting the least recently used
+	 * entry if the cache is full.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 */
+	public synchronized void put(K key, V value) {
+		entries.put(key, value);
+	}
+
+	/**
+	 * Removes the value of a key.
+	 *
+	 * @param key the key
+	 * @return the removed value, or null if it was not cached
+	 */
+	public synchronized V remove(K key) {
+		return entries.remove(key);
+	}
+
+	/**
+	 * Removes every entry. The hit and miss counts are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of cached entries.
+	 *
+	 * @return number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the most entries the cache keeps.
+	 *
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of lookups that found a value.
+	 *
+	 * @return number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that found nothing.
+	 *
+	 * @return number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d/%d entries, %d hits, %d misses", entries.size(), capacity, hits, misses);
+	}
+}
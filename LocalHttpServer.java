@@ -0,0 +1,263 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A small HTTP/1.1 server on the loopback interface that stands in for the
+ * web when measuring or trying out the crawler and fetchers.
+ *
+ * <p>It serves an endless site of generated pages. Page n has a few words and
+ * links to the pages after it, spread over a number of hosts that are all
+ * this server: 127.0.0.1, 127.0.0.2 and so on, which Linux routes to the
+ * loopback interface. Every response can be held back for a delay, to stand
+ * in for a slow site. Connections are kept open between requests unless the
+ * client asks to close them, and the server counts the connections and
+ * requests it takes.</p>
+ *
+ * <p>Pages can be padded with paragraphs of text, to stand in for large pages,
+ * and sent in chunks. A page is gzipped or deflated for a client that accepts
+ * either encoding.</p>
+ */
+public class LocalHttpServer implements AutoCloseable {
+	/** The most bytes of a chunk, when sending in chunks. */
+	public static final int CHUNK = 4096;
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private final int hosts;
+	private final int links;
+	private final long delay;
+	private final int paragraphs;
+	private final boolean chunked;
+	private final ServerSocket server;
+	private final ExecutorService connections;
+	private final AtomicInteger accepted;
+	private final AtomicInteger requests;
+
+	/**
+	 * Starts a server on a free port.
+	 * @param hosts the number of hosts the links of the pages are spread over
+	 * @param links the number of links on each page
+	 * @param delay the milliseconds to wait before each response
+	 * @throws IOException if the server cannot listen
+	 */
+	public LocalHttpServer(int hosts, int links, long delay) throws IOException {
+		this(hosts, links, delay, 0, false);
+	}
+
+	/**
+	 * Starts a server on a free port.
+	 * @param hosts the number of hosts the links of the pages are spread over
+	 * @param links the number of links on each page
+	 * @param delay the milliseconds to wait before each response
+	 * @param paragraphs the number of paragraphs of text to pad each page with
+	 * @param chunked true to send pages in chunks rather than with their length
+	 * @throws IOException if the server cannot listen
+	 */
+	public LocalHttpServer(int hosts, int links, long delay, int paragraphs, boolean chunked) throws IOException {
+		this.hosts = Math.max(hosts, 1);
+		this.links = links;
+		this.delay = delay;
+		this.paragraphs = paragraphs;
+		this.chunked = chunked;
+		this.server = new ServerSocket(0, 4096, InetAddress.getByName("0.0.0.0"));
+		this.connections = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "LocalHttpServer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.accepted = new AtomicInteger(0);
+		this.requests = new AtomicInteger(0);
+		Thread acceptor = new Thread(this::accept, "LocalHttpServer");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * returns the url of a page
+	 * @param page the number of the page
+	 * @return the url
+	 */
+	public URL url(int page) {
+		try {
+			return new URL("http://127.0.0." + (1 + page % hosts) + ":" + server.getLocalPort() + "/page" + page);
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * returns the html of a page
+	 * @param page the number of the page
+	 * @return the html
+	 */
+	public String html(int page) {
+		StringBuilder html = new StringBuilder();
+		html.append("<html><head><title>Page ").append(page).append("</title></head><body>\n");
+		html.append("<p>This is page ").append(page).append(" of the local site, served for crawling tests.</p>\n");
+		for(int i = 0; i < paragraphs; i++) {
+			html.append("<p>Paragraph ").append(i).append(" of page ").append(page)
+					.append(" has <b>bold</b> words, an &amp; entity, <!-- a comment --> and <i>more</i> text");
+			html.append(" to fill the page with caf\u00e9 words and numbers like ").append(page * 31 + i).append(".</p>\n");
+			if(i % 50 == 0) {
+				html.append("<script>var skipped = \"<p>not text</p>\";</script>\n");
+			}
+		}
+		for(int i = 1; i <= links; i++) {
+			html.append("<a href=\"").append(url(page * links + i)).append("\">next ").append(i).append("</a>\n");
+		}
+		html.append("</body></html>\n");
+		return html.toString();
+	}
+
+	/**
+	 * returns the number of connections taken so far
+	 * @return the number of connections
+	 */
+	public int connections() {
+		return accepted.get();
+	}
+
+	/**
+	 * returns the number of requests answered so far
+	 * @return the number of requests
+	 */
+	public int requests() {
+		return requests.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		connections.shutdownNow();
+	}
+
+	/**
+	 * takes connections until the server is closed
+	 */
+	private void accept() {
+		while(!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				accepted.incrementAndGet();
+				connections.execute(() -> serve(socket));
+			} catch(IOException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * answers the requests of a connection until either side closes it
+	 * @param socket the connection
+	 */
+	private void serve(Socket socket) {
+		try(Socket connection = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.ISO_8859_1))) {
+			OutputStream out = connection.getOutputStream();
+			String line;
+			while((line = in.readLine()) != null) {
+				if(line.isEmpty()) {
+					continue;
+				}
+				String[] request = line.split(" ");
+				boolean close = request.length > 2 && request[2].equals("HTTP/1.0");
+				String encoding = "";
+				while((line = in.readLine()) != null && !line.isEmpty()) {
+					String header = line.toLowerCase(Locale.ROOT);
+					if(header.startsWith("connection:")) {
+						close = header.contains("close");
+					} else if(header.startsWith("accept-encoding:")) {
+						encoding = header.contains("gzip") ? "gzip" : header.contains("deflate") ? "deflate" : "";
+					}
+				}
+				if(delay > 0) {
+					Thread.sleep(delay);
+				}
+				respond(out, request.length > 1 ? request[1] : "/", encoding, close);
+				requests.incrementAndGet();
+				if(close) {
+					return;
+				}
+			}
+		} catch(IOException e) {
+			return;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * writes the response to a request in one write, so a kept open
+	 * connection does not wait out a delayed acknowledgement between the head
+	 * and the body
+	 * @param out the connection
+	 * @param path the path requested
+	 * @param encoding gzip or deflate to compress the body with, or an empty string
+	 * @param close true to tell the client the connection closes
+	 * @throws IOException
+	 */
+	private void respond(OutputStream out, String path, String encoding, boolean close) throws IOException {
+		int page = -1;
+		if(path.startsWith("/page")) {
+			try {
+				page = Integer.parseInt(path.substring(5));
+			} catch(NumberFormatException e) {
+				page = -1;
+			}
+		}
+		byte[] body = (page < 0 ? "not found\n" : html(page)).getBytes(StandardCharsets.UTF_8);
+		if(!encoding.isEmpty()) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try(DeflaterOutputStream deflater = encoding.equals("gzip") ?
+					new GZIPOutputStream(compressed) :
+					new DeflaterOutputStream(compressed)) {
+				deflater.write(body);
+			}
+			body = compressed.toByteArray();
+		}
+		ByteArrayOutputStream response = new ByteArrayOutputStream(body.length + 256);
+		StringBuilder head = new StringBuilder();
+		head.append(page < 0 ? "HTTP/1.1 404 Not Found\r\n" : "HTTP/1.1 200 OK\r\n");
+		head.append("Content-Type: ").append(page < 0 ? "text/plain" : "text/html; charset=utf-8").append("\r\n");
+		if(!encoding.isEmpty()) {
+			head.append("Content-Encoding: ").append(encoding).append("\r\n");
+		}
+		if(chunked) {
+			head.append("Transfer-Encoding: chunked\r\n");
+		} else {
+			head.append("Content-Length: ").append(body.length).append("\r\n");
+		}
+		head.append("Connection: ").append(close ? "close" : "keep-alive").append("\r\n");
+		head.append("\r\n");
+		response.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+		if(chunked) {
+			for(int start = 0; start < body.length; start += CHUNK) {
+				int length = Math.min(CHUNK, body.length - start);
+				response.write((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+				response.write(body, start, length);
+				response.write(CRLF);
+			}
+			response.write('0');
+			response.write(CRLF);
+			response.write(CRLF);
+		} else {
+			response.write(body);
+		}
+		response.writeTo(out);
+		out.flush();
+	}
+}
@@ -42,7 +42,7 @@ public class NewCrawlServlet extends HttpServlet {
 			WebCrawler crawler = new WebCrawler(local, queue );
 			crawler.seedCrawl(url, 50);
 			out.printf("Seed is currently being crawled");
-			index.addAll(local);
+			index.update(local);
 				
 			
 		}
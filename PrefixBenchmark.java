@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Measures one to three character prefix lookups over a large vocabulary,
+ * comparing the tail map walk of {@link InvertedIndex} with the prefix ranges
+ * of a {@link TermDictionary}. For each prefix both walk the matching words,
+ * counting them and summing their number of locations, as a partial search
+ * walks them. The dictionary is also timed giving the same sums from its
+ * running totals alone, without walking the words.
+ */
+public class PrefixBenchmark {
+
+	/**
+	 * Builds a pseudo-random vocabulary with skewed first letters, so some
+	 * prefixes cover a large share of the words.
+	 *
+	 * @param words the number of words to generate
+	 * @return each word and its number of locations
+	 */
+	private static TreeMap<String, Integer> vocabulary(int words) {
+		Random random = new Random(212);
+		TreeMap<String, Integer> vocabulary = new TreeMap<String, Integer>();
+		while(vocabulary.size() < words) {
+			StringBuilder word = new StringBuilder();
+			int length = 3 + random.nextInt(8);
+			for(int i = 0; i < length; i++) {
+				word.append((char) ('a' + (int) (26 * Math.pow(random.nextDouble(), 2))));
+			}
+			vocabulary.put(word.toString(), 1 + (int) Math.pow(1000, random.nextDouble()));
+		}
+		return vocabulary;
+	}
+
+	/**
+	 * Builds every one and two character prefix and a sample of three character
+	 * prefixes.
+	 *
+	 * @return the prefixes
+	 */
+	private static ArrayList<String> prefixes() {
+		ArrayList<String> prefixes = new ArrayList<String>();
+		Random random = new Random(42);
+		for(char a = 'a'; a <= 'z'; a++) {
+			prefixes.add(String.valueOf(a));
+			for(char b = 'a'; b <= 'z'; b++) {
+				prefixes.add("" + a + b);
+				prefixes.add("" + a + b + (char) ('a' + random.nextInt(26)));
+			}
+		}
+		return prefixes;
+	}
+
+	/**
+	 * walks the words after the prefix until one does not start with it
+	 */
+	private static long tree(TreeMap<String, Integer> vocabulary, String prefix) {
+		long words = 0;
+		long postings = 0;
+		for(Map.Entry<String, Integer> entry : vocabulary.tailMap(prefix).entrySet()) {
+			if(!entry.getKey().startsWith(prefix)) {
+				break;
+			}
+			words++;
+			postings += entry.getValue();
+		}
+		return words + postings;
+	}
+
+	/**
+	 * finds the prefix range with binary searches and walks the words in it
+	 */
+	private static long dictionary(TermDictionary dictionary, String prefix) {
+		long words = 0;
+		long postings = 0;
+		for(int id = dictionary.first(prefix), end = dictionary.end(prefix); id < end; id++) {
+			words++;
+			postings += dictionary.frequency(id);
+		}
+		return words + postings;
+	}
+
+	/**
+	 * finds the postings under the prefix from the running sums, without
+	 * walking the words
+	 */
+	private static long summed(TermDictionary dictionary, String prefix) {
+		return dictionary.end(prefix) - dictionary.first(prefix) + dictionary.prefixFrequency(prefix);
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args optional number of words and rounds, default 1000000 5
+	 */
+	public static void main(String[] args) {
+		int words = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		TreeMap<String, Integer> vocabulary = vocabulary(words);
+		String[] terms = vocabulary.keySet().toArray(new String[0]);
+		int[] frequencies = new int[terms.length];
+		for(int i = 0; i < terms.length; i++) {
+			frequencies[i] = vocabulary.get(terms[i]);
+		}
+		TermDictionary dictionary = new TermDictionary(terms, frequencies);
+		ArrayList<String> prefixes = prefixes();
+
+		for(int length = 1; length <= 3; length++) {
+			long treeTime = 0;
+			long dictionaryTime = 0;
+			long summedTime = 0;
+			long treeCheck = 0;
+			long dictionaryCheck = 0;
+			long summedCheck = 0;
+			int queries = 0;
+			for(int round = 0; round <= rounds; round++) {
+				for(String prefix : prefixes) {
+					if(prefix.length() != length) {
+						continue;
+					}
+					long start = System.nanoTime();
+					long found = tree(vocabulary, prefix);
+					long middle = System.nanoTime();
+					long ranged = dictionary(dictionary, prefix);
+					long last = System.nanoTime();
+					long sums = summed(dictionary, prefix);
+					long end = System.nanoTime();
+					if(round > 0) {
+						treeTime += middle - start;
+						dictionaryTime += last - middle;
+						summedTime += end - last;
+						treeCheck += found;
+						dictionaryCheck += ranged;
+						summedCheck += sums;
+						queries++;
+					}
+				}
+			}
+			System.out.printf("%d character prefixes: TreeMap %10.1f us/query, TermDictionary %8.2f us/query, sums %6.2f us/query%s%n",
+					length, treeTime / 1e3 / queries, dictionaryTime / 1e3 / queries, summedTime / 1e3 / queries,
+					treeCheck == dictionaryCheck && treeCheck == summedCheck ? "" : " (results differ)");
+		}
+	}
+}
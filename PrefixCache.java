@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches the merged postings of hot partial search prefixes. A partial search
+ * for a short prefix adds up the postings of every word starting with it;
+ * once a prefix is cached its counts per location are added in one pass
+ * instead. Word counts are not cached, since they change whenever a location
+ * gets more words, so searches look them up as before.
+ *
+ * <p>A prefix is only cached the second time it misses, so prefixes searched
+ * once do not evict hot ones. Adding a word removes every cached prefix of it,
+ * and a union built while a word was being added is not cached.</p>
+ */
+public class PrefixCache {
+	/** The default number of prefixes to cache. */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private final LRUCache<String, Union> unions;
+	private final LRUCache<String, Boolean> doorkeeper;
+	private long version;
+	private int longest;
+
+	/**
+	 * Creates a cache holding the default number of prefixes.
+	 */
+	public PrefixCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a cache.
+	 * @param capacity the most prefixes to cache
+	 */
+	public PrefixCache(int capacity) {
+		unions = new LRUCache<String, Union>(capacity);
+		doorkeeper = new LRUCache<String, Boolean>(capacity * 4);
+		version = 0;
+		longest = 0;
+	}
+
+	/**
+	 * returns the merged postings of a prefix
+	 * @param prefix the prefix being searched
+	 * @return the union, or null if it is not cached
+	 */
+	public Union get(String prefix) {
+		return unions.get(prefix);
+	}
+
+	/**
+	 * decides whether the union of a prefix that missed should be built and
+	 * cached. a prefix is admitted the second time it misses.
+	 * @param prefix the prefix that missed
+	 * @return true if the union should be built
+	 */
+	public boolean admit(String prefix) {
+		if(doorkeeper.remove(prefix) != null) {
+			return true;
+		}
+		doorkeeper.put(prefix, Boolean.TRUE);
+		return false;
+	}
+
+	/**
+	 * returns the number of invalidations so far. read it before building a
+	 * union and pass it to put.
+	 * @return the current version
+	 */
+	public synchronized long version() {
+		return version;
+	}
+
+	/**
+	 * caches the union of a prefix, unless a word was added since version was read
+	 * @param prefix the prefix
+	 * @param union the merged postings
+	 * @param version the version read before the union was built
+	 */
+	public synchronized void put(String prefix, Union union, long version) {
+		if(this.version == version) {
+			unions.put(prefix, union);
+			longest = Math.max(longest, prefix.length());
+		}
+	}
+
+	/**
+	 * removes every cached prefix of a word that was added
+	 * @param word the word added to the index
+	 */
+	public synchronized void invalidate(String word) {
+		version++;
+		if(unions.size() == 0) {
+			return;
+		}
+		for(int i = 0; i <= Math.min(word.length(), longest); i++) {
+			unions.remove(word.substring(0, i));
+		}
+	}
+
+	/**
+	 * removes every cached prefix
+	 */
+	public synchronized void clear() {
+		version++;
+		unions.clear();
+		longest = 0;
+	}
+
+	/**
+	 * returns the number of searches served from the cache
+	 * @return number of hits
+	 */
+	public long hits() {
+		return unions.hits();
+	}
+
+	/**
+	 * returns the number of searches that had to merge postings
+	 * @return number of misses
+	 */
+	public long misses() {
+		return unions.misses();
+	}
+
+	@Override
+	public String toString() {
+		return unions.toString();
+	}
+
+	/**
+	 * The summed counts of every word under a prefix, by location, in the
+	 * order the locations were first found.
+	 */
+	public static class Union {
+		private final String[] locations;
+		private final int[] counts;
+
+		/**
+		 * Creates a union from counts by location.
+		 * @param counts the count of each location, in the order they were found
+		 */
+		public Union(Map<String, Integer> counts) {
+			this.locations = new String[counts.size()];
+			this.counts = new int[counts.size()];
+			int i = 0;
+			for(Map.Entry<String, Integer> entry : counts.entrySet()) {
+				this.locations[i] = entry.getKey();
+				this.counts[i] = entry.getValue();
+				i++;
+			}
+		}
+
+		/**
+		 * adds the counts to the search results, creating a result for each
+		 * location not found yet. a location whose word count is gone was
+		 * removed after the union was built, so it is skipped.
+		 * @param searchResult map of location and searchResult
+		 * @param finalResults the search results in the order they were found
+		 * @param totals the word count of each location
+		 */
+		public void addTo(HashMap<String, SearchResult> searchResult, ArrayList<SearchResult> finalResults,
+				Map<String, Integer> totals) {
+			for(int i = 0; i < locations.length; i++) {
+				SearchResult result = searchResult.get(locations[i]);
+				if(result != null) {
+					result.updateCount(counts[i]);
+				} else {
+					Integer total = totals.get(locations[i]);
+					if(total == null) {
+						continue;
+					}
+					result = new SearchResult(locations[i], counts[i], total);
+					searchResult.put(locations[i], result);
+					finalResults.add(result);
+				}
+			}
+		}
+	}
+}
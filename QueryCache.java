@@ -0,0 +1,105 @@
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches pages of search results by query, so repeated and trending queries
+ * are answered without searching the index again. Each page is stored with
+ * the generation of the index it was found at, and is only reused while the
+ * index is still at that generation, so any word added to the index makes the
+ * cached pages stale without having to find them. A stale page counts as a
+ * miss, not a hit.
+ */
+public class QueryCache {
+	/** The default number of result pages to cache. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final InvertedIndex index;
+	private final LRUCache<String, Page> pages;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * Creates a cache holding the default number of pages.
+	 * @param index the index to search
+	 */
+	public QueryCache(InvertedIndex index) {
+		this(index, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a cache.
+	 * @param index the index to search
+	 * @param capacity the most pages to cache
+	 */
+	public QueryCache(InvertedIndex index, int capacity) {
+		this.index = index;
+		this.pages = new LRUCache<String, Page>(capacity);
+		this.hits = new AtomicLong(0);
+		this.misses = new AtomicLong(0);
+	}
+
+	/**
+	 * returns one page of the best results of a query, from the cache if the
+	 * index has not changed since it was searched
+	 * @param queryWords the stemmed words in the query
+	 * @param exact whether to run an exact or partial search
+	 * @param offset the number of best results to skip
+	 * @param limit the most results to return
+	 * @return the results ranked offset to offset + limit, in sorted order
+	 */
+	public ArrayList<SearchResult> search(TreeSet<String> queryWords, boolean exact, int offset, int limit) {
+		String key = (exact ? "exact " : "partial ") + offset + " " + limit + " " + String.join(" ", queryWords);
+		long generation = index.generation();
+		Page page = pages.get(key);
+		if(page != null && page.generation == generation) {
+			hits.incrementAndGet();
+			return new ArrayList<SearchResult>(page.results);
+		}
+		misses.incrementAndGet();
+		ArrayList<SearchResult> results;
+		if(exact) {
+			results = index.exactSearch(queryWords, offset, limit);
+		} else {
+			results = index.partialSearch(queryWords, offset, limit);
+		}
+		pages.put(key, new Page(generation, results));
+		return new ArrayList<SearchResult>(results);
+	}
+
+	/**
+	 * returns the number of searches answered from the cache by a page found
+	 * at the current generation of the index
+	 * @return number of hits
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * returns the number of searches that were not cached or whose cached
+	 * page was stale, and so were searched again
+	 * @return number of misses
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d/%d pages, %d hits, %d misses", pages.size(), pages.capacity(), hits.get(), misses.get());
+	}
+
+	/**
+	 * A page of results and the generation of the index it was found at.
+	 */
+	private static class Page {
+		private final long generation;
+		private final ArrayList<SearchResult> results;
+
+		private Page(long generation, ArrayList<SearchResult> results) {
+			this.generation = generation;
+			this.results = results;
+		}
+	}
+}
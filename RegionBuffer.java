@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A read-only run of bytes that may be longer than one {@link ByteBuffer} can
+ * hold. The bytes are kept in regions that all have the same power-of-two
+ * size but the last, so the byte at an offset is found in region
+ * {@code offset >>> shift} without a search.
+ */
+public class RegionBuffer {
+	/** The shift of the windows a file is mapped in, 1 GB each. */
+	public static final int MAPPED_SHIFT = 30;
+
+	/** The shift of the chunks a {@link Writer} fills on the heap, 1 MB each. */
+	public static final int CHUNK_SHIFT = 20;
+
+	private final ByteBuffer[] regions;
+	private final int shift;
+	private final long mask;
+	private final long size;
+
+	/**
+	 * Creates a buffer over regions.
+	 *
+	 * @param regions the regions in order, all holding 1 &lt;&lt; shift bytes but the last
+	 * @param shift the number of low bits of an offset that index into a region
+	 * @param size the number of bytes in all the regions
+	 */
+	public RegionBuffer(ByteBuffer[] regions, int shift, long size) {
+		this.regions = new ByteBuffer[regions.length];
+		for(int i = 0; i < regions.length; i++) {
+			this.regions[i] = regions[i].asReadOnlyBuffer();
+		}
+		this.shift = shift;
+		this.mask = (1L << shift) - 1;
+		this.size = size;
+	}
+
+	/**
+	 * Maps a whole file read-only in windows of 1 &lt;&lt; {@value #MAPPED_SHIFT}
+	 * bytes, since one mapping cannot pass 2 GB. The mappings stay valid
+	 * after the channel is closed.
+	 *
+	 * @param channel the file to map
+	 * @return the buffer over the file
+	 * @throws IOException
+	 */
+	public static RegionBuffer map(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long window = 1L << MAPPED_SHIFT;
+		ByteBuffer[] regions = new ByteBuffer[(int) ((size + window - 1) >>> MAPPED_SHIFT)];
+		for(int i = 0; i < regions.length; i++) {
+			long start = (long) i << MAPPED_SHIFT;
+			regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(window, size - start));
+		}
+		return new RegionBuffer(regions, MAPPED_SHIFT, size);
+	}
+
+	/**
+	 * Returns the number of bytes.
+	 *
+	 * @return the size in bytes
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the byte at an offset using an absolute get, so several threads
+	 * can read one buffer.
+	 *
+	 * @param offset the offset of the byte
+	 * @return the byte
+	 */
+	public byte get(long offset) {
+		return regions[(int) (offset >>> shift)].get((int) (offset & mask));
+	}
+
+	/**
+	 * Writes all the bytes to a channel.
+	 *
+	 * @param channel the channel to write to
+	 * @throws IOException
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		for(ByteBuffer region : regions) {
+			ByteBuffer buffer = region.duplicate();
+			buffer.clear();
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Collects bytes on the heap in chunks of 1 &lt;&lt; {@value #CHUNK_SHIFT}
+	 * bytes, so what is written is never copied to grow an array and is not
+	 * limited to the size of one.
+	 */
+	public static class Writer {
+		private final ArrayList<byte[]> chunks;
+		private byte[] chunk;
+		private int used;
+		private long size;
+
+		/**
+		 * Creates an empty writer.
+		 */
+		public Writer() {
+			this.chunks = new ArrayList<byte[]>();
+			this.chunk = null;
+			this.used = 0;
+			this.size = 0;
+		}
+
+		/**
+		 * Writes a byte.
+		 *
+		 * @param b the byte, in the low eight bits
+		 */
+		public void write(int b) {
+			if(chunk == null || used == chunk.length) {
+				chunk = new byte[1 << CHUNK_SHIFT];
+				chunks.add(chunk);
+				used = 0;
+			}
+			chunk[used++] = (byte) b;
+			size++;
+		}
+
+		/**
+		 * Writes bytes from an array.
+		 *
+		 * @param bytes the array
+		 * @param offset the index of the first byte to write
+		 * @param length the number of bytes to write
+		 */
+		public void write(byte[] bytes, int offset, int length) {
+			while(length > 0) {
+				if(chunk == null || used == chunk.length) {
+					chunk = new byte[1 << CHUNK_SHIFT];
+					chunks.add(chunk);
+					used = 0;
+				}
+				int copied = Math.min(length, chunk.length - used);
+				System.arraycopy(bytes, offset, chunk, used, copied);
+				used += copied;
+				offset += copied;
+				length -= copied;
+				size += copied;
+			}
+		}
+
+		/**
+		 * Returns the number of bytes written.
+		 *
+		 * @return the size in bytes
+		 */
+		public long size() {
+			return size;
+		}
+
+		/**
+		 * Returns a buffer over the bytes written, sharing all chunks but the
+		 * last, which is cut to the bytes used. Nothing should be written
+		 * afterwards.
+		 *
+		 * @return the buffer
+		 */
+		public RegionBuffer toBuffer() {
+			ByteBuffer[] regions = new ByteBuffer[chunks.size()];
+			for(int i = 0; i < regions.length; i++) {
+				byte[] bytes = chunks.get(i);
+				regions[i] = ByteBuffer.wrap(i == regions.length - 1 ? Arrays.copyOf(bytes, used) : bytes);
+			}
+			return new RegionBuffer(regions, CHUNK_SHIFT, size);
+		}
+	}
+}
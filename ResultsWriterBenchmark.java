@@ -0,0 +1,123 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Measures the time of writing search results with
+ * {@link TreeJSONWriter#asQueryTripleNestedObject(TreeMap, Path)}, as -results
+ * used to, against {@link SearchResultWriter}, and checks both write the same
+ * bytes. Also checks the scores of many word counts are written the same as
+ * {@code new DecimalFormat("0.000000")} formats them.
+ */
+public class ResultsWriterBenchmark {
+
+	/**
+	 * Generates pseudo-random results for a number of queries.
+	 *
+	 * @param queries the number of queries
+	 * @param perQuery the most results of each query
+	 * @return the results of each query
+	 */
+	private static TreeMap<String, ArrayList<SearchResult>> generate(int queries, int perQuery) {
+		Random random = new Random(212);
+		TreeMap<String, ArrayList<SearchResult>> results = new TreeMap<String, ArrayList<SearchResult>>();
+		for(int i = 0; i < queries; i++) {
+			ArrayList<SearchResult> found = new ArrayList<SearchResult>();
+			int count = random.nextInt(perQuery + 1);
+			for(int j = 0; j < count; j++) {
+				int total = 1 + random.nextInt(20000);
+				found.add(new SearchResult("/corpus/section" + random.nextInt(100) + "/document" + random.nextInt(5000) + ".txt",
+						1 + random.nextInt(total), total));
+			}
+			results.put("query" + i + (i % 10 == 0 ? " [and], more" : " words"), found);
+		}
+		return results;
+	}
+
+	/**
+	 * an output to measure
+	 */
+	private interface Output {
+		void write(Path path) throws IOException;
+	}
+
+	/**
+	 * writes the output a few times and reports the best time
+	 */
+	private static void measure(String name, Output output, Path path, int rounds) throws IOException {
+		long best = Long.MAX_VALUE;
+		for(int round = -1; round < rounds; round++) {
+			Files.deleteIfExists(path);
+			long start = System.nanoTime();
+			output.write(path);
+			long elapsed = System.nanoTime() - start;
+			if(round >= 0) {
+				best = Math.min(best, elapsed);
+			}
+		}
+		System.out.printf("%-8s %8.3f s %8.1f MB/s%n", name, best / 1e9, Files.size(path) / (best / 1e9) / 1e6);
+	}
+
+	/**
+	 * checks the scores of every count up to a total are written as the
+	 * formatter writes them
+	 * @return the number of scores that differ
+	 */
+	private static int checkScores(int totals) throws IOException {
+		DecimalFormat format = new DecimalFormat("0.000000");
+		int differ = 0;
+		for(int total = 1; total <= totals; total++) {
+			TreeMap<String, ArrayList<SearchResult>> results = new TreeMap<String, ArrayList<SearchResult>>();
+			ArrayList<SearchResult> found = new ArrayList<SearchResult>();
+			StringBuilder expected = new StringBuilder();
+			for(int count = 0; count <= total; count++) {
+				found.add(new SearchResult("", count, total));
+				expected.append(format.format((double) count / total)).append('\n');
+			}
+			results.put("", found);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try(JSONStreamWriter writer = new JSONStreamWriter(bytes, true)) {
+				new SearchResultWriter(writer).write(results);
+			}
+			StringBuilder written = new StringBuilder();
+			for(String line : bytes.toString("UTF-8").split("\\R")) {
+				if(line.trim().startsWith("\"score\": ")) {
+					written.append(line.trim().substring(9)).append('\n');
+				}
+			}
+			if(!written.toString().equals(expected.toString())) {
+				differ++;
+			}
+		}
+		return differ;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args the number of queries, default 100000, the most results of
+	 * each, default 50, and the number of rounds, default 3
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int perQuery = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		TreeMap<String, ArrayList<SearchResult>> results = generate(queries, perQuery);
+		Path legacy = Files.createTempFile("legacy", ".json");
+		Path streamed = Files.createTempFile("streamed", ".json");
+
+		measure("legacy", path -> TreeJSONWriter.asQueryTripleNestedObject(results, path), legacy, rounds);
+		measure("streamed", path -> SearchResultWriter.write(results, path), streamed, rounds);
+		System.out.println("same bytes: " + Arrays.equals(Files.readAllBytes(legacy), Files.readAllBytes(streamed)));
+		System.out.println("totals with a differing score: " + checkScores(2000));
+		Files.delete(legacy);
+		Files.delete(streamed);
+	}
+}
@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sums the counts of a query's words term-at-a-time in a primitive array
+ * indexed by location id, instead of looking up a {@link SearchResult} by
+ * location for every posting. A {@link SearchResult} is only built once per
+ * matched location, after all words have been added, so the scores and their
+ * order are the same as adding the counts to the results one by one.
+ *
+ * <p>Each thread reuses one accumulator, and only the entries a query touched
+ * are cleared, so a search costs nothing per location that did not match.</p>
+ */
+public class ScoreAccumulator {
+	private static final ThreadLocal<ScoreAccumulator> LOCAL = new ThreadLocal<ScoreAccumulator>();
+
+	private int[] counts;
+	private int[] touched;
+	private int size;
+
+	/**
+	 * Creates an accumulator for a number of locations.
+	 *
+	 * @param documents the number of location ids
+	 */
+	public ScoreAccumulator(int documents) {
+		counts = new int[documents];
+		touched = new int[Math.min(documents, 1024)];
+		size = 0;
+	}
+
+	/**
+	 * Returns the accumulator of the current thread, grown to fit the number of
+	 * locations if needed. It is empty until counts are added.
+	 *
+	 * @param documents the number of location ids
+	 * @return the accumulator
+	 */
+	public static ScoreAccumulator get(int documents) {
+		ScoreAccumulator accumulator = LOCAL.get();
+		if(accumulator == null || accumulator.counts.length < documents) {
+			accumulator = new ScoreAccumulator(documents);
+			LOCAL.set(accumulator);
+		}
+		return accumulator;
+	}
+
+	/**
+	 * Makes room for a number of matched locations up front, so a query whose
+	 * postings are known before it runs does not grow the list of touched
+	 * locations while it adds them.
+	 *
+	 * @param postings the most locations the query can match
+	 */
+	public void reserve(long postings) {
+		int needed = (int) Math.min(counts.length, postings);
+		if(needed > touched.length) {
+			touched = Arrays.copyOf(touched, needed);
+		}
+	}
+
+	/**
+	 * Adds the count of a word to a location.
+	 *
+	 * @param document the location id
+	 * @param count the number of times the word is in the location
+	 */
+	public void add(int document, int count) {
+		if(counts[document] == 0) {
+			if(size == touched.length) {
+				touched = Arrays.copyOf(touched, Math.min(counts.length, size * 2));
+			}
+			touched[size++] = document;
+		}
+		counts[document] += count;
+	}
+
+	/**
+	 * Builds a search result for every location a count was added to, in the
+	 * order the locations were first found, and empties the accumulator.
+	 *
+	 * @param locations the location of each id
+	 * @param totals the word count of each id
+	 * @return the unsorted search results
+	 */
+	public ArrayList<SearchResult> results(List<String> locations, int[] totals) {
+		ArrayList<SearchResult> results = new ArrayList<SearchResult>(size);
+		for(int i = 0; i < size; i++) {
+			int document = touched[i];
+			results.add(new SearchResult(locations.get(document), counts[document], totals[document]));
+			counts[document] = 0;
+		}
+		size = 0;
+		return results;
+	}
+}
@@ -0,0 +1,114 @@
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Measures multi-word query throughput over a large number of documents for
+ * the location-keyed scoring of {@link InvertedIndex} and the id-keyed score
+ * accumulators of {@link CompactInvertedIndex} and {@link IndexSegment}. Run
+ * with a large heap (for example -Xmx3g) at the default million documents.
+ */
+public class ScoringBenchmark {
+
+	/** The number of distinct words in the generated documents. */
+	private static final int WORDS = 5000;
+
+	/**
+	 * Adds the same pseudo-random documents to the index. Words are drawn from a
+	 * skewed distribution so common words match a large share of documents.
+	 *
+	 * @param index the index to fill
+	 * @param documents the number of documents
+	 * @param length the number of words in each document
+	 */
+	private static void fill(InvertedIndex index, int documents, int length) {
+		Random random = new Random(212);
+		for(int document = 0; document < documents; document++) {
+			String location = "https://example.com/page/" + document;
+			for(int position = 1; position <= length; position++) {
+				index.addWord("w" + (int) Math.pow(WORDS, random.nextDouble()), location, position);
+			}
+		}
+	}
+
+	/**
+	 * Runs the same queries against the index and reports queries per second.
+	 *
+	 * @param name the name to report
+	 * @param index the filled index
+	 * @param queries the number of timed queries
+	 * @param exact whether to run exact or partial searches
+	 */
+	private static void measure(String name, InvertedIndex index, int queries, boolean exact) {
+		TreeSet<String>[] batch = queries(queries, exact);
+		long matched = 0;
+		for(int i = 0; i < Math.min(queries, 20); i++) {
+			matched += search(index, batch[i], exact);
+		}
+		long start = System.nanoTime();
+		for(TreeSet<String> query : batch) {
+			matched += search(index, query, exact);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-22s %-7s %8.1f queries/s %12d results%n", name, exact ? "exact" : "partial",
+				queries / seconds, matched);
+	}
+
+	/**
+	 * Runs one query.
+	 *
+	 * @param index the index to search
+	 * @param query the query words
+	 * @param exact whether to run an exact or partial search
+	 * @return the number of results
+	 */
+	private static int search(InvertedIndex index, TreeSet<String> query, boolean exact) {
+		return exact ? index.exactSearch(query).size() : index.partialSearch(query).size();
+	}
+
+	/**
+	 * Builds three-word queries; partial queries use short prefixes.
+	 *
+	 * @param queries the number of queries
+	 * @param exact whether to build words for exact or prefixes for partial searches
+	 * @return the queries
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static TreeSet<String>[] queries(int queries, boolean exact) {
+		Random random = new Random(42);
+		TreeSet<String>[] batch = new TreeSet[queries];
+		for(int i = 0; i < queries; i++) {
+			batch[i] = new TreeSet<String>();
+			for(int j = 0; j < 3; j++) {
+				String word = "w" + (int) Math.pow(WORDS, random.nextDouble());
+				batch[i].add(exact ? word : word.substring(0, Math.min(word.length(), 4)));
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args optional documents, words per document and queries, default 1000000 4 200
+	 */
+	public static void main(String[] args) {
+		int documents = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int length = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		InvertedIndex tree = new InvertedIndex();
+		fill(tree, documents, length);
+		measure("InvertedIndex", tree, queries, true);
+		measure("InvertedIndex", tree, queries, false);
+		IndexSegment segment = tree.freeze();
+		tree = null;
+		measure("IndexSegment", segment, queries, true);
+		measure("IndexSegment", segment, queries, false);
+		segment = null;
+
+		CompactInvertedIndex compact = new CompactInvertedIndex();
+		fill(compact, documents, length);
+		measure("CompactInvertedIndex", compact, queries, true);
+		measure("CompactInvertedIndex", compact, queries, false);
+	}
+}
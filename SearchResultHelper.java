@@ -6,19 +6,29 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 public class SearchResultHelper implements SearchResultHelperInterface {
 	private final TreeMap<String, ArrayList<SearchResult>> results;
 	private final InvertedIndex index;
+	private final int limit;
 	
 	/**
 	 * builds and stores a list of search words
 	 * @param index the InvertedIndex to search through
 	 */
 	public SearchResultHelper(InvertedIndex index) {
+		this(index, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * builds and stores a list of search words, keeping only the best results
+	 * of each query
+	 * @param index the InvertedIndex to search through
+	 * @param limit the most results to keep for each query
+	 */
+	public SearchResultHelper(InvertedIndex index, int limit) {
 		this.index = index;
+		this.limit = limit;
 		results = new TreeMap<String, ArrayList<SearchResult>>();
 	}
 												
@@ -48,18 +58,17 @@ public class SearchResultHelper implements SearchResultHelperInterface {
 	 * @throws IOException
 	 */
 	public void searchMatches(String line, boolean exact) {
-		Stemmer cleaner = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
 		String[] stemmedwords = TextParser.parse(line);
 		TreeSet<String> queryWords = new TreeSet<String>();
 		for(String stems : stemmedwords) {
-			queryWords.add(cleaner.stem(stems).toString());
+			queryWords.add(StemCache.stem(stems));
 		}
 		String queryLine = String.join(" ", queryWords);
 		if(queryWords.size() != 0 && !results.containsKey(queryLine)) {
 			if (exact) {
-				results.put(queryLine, index.exactSearch(queryWords));
+				results.put(queryLine, index.exactSearch(queryWords, 0, limit));
 			} else {
-				results.put(queryLine, index.partialSearch(queryWords));
+				results.put(queryLine, index.partialSearch(queryWords, 0, limit));
 			}
 		}
 	}
@@ -70,6 +79,6 @@ public class SearchResultHelper implements SearchResultHelperInterface {
 	 * @throws IOException
 	 */
 	public void outputSearchResults(Path path) throws IOException {
-			TreeJSONWriter.asQueryTripleNestedObject(results, path);
+			SearchResultWriter.write(results, path);
 	}
 }
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Writes search results as JSON through a {@link JSONStreamWriter}, in the same
+ * bytes as {@link TreeJSONWriter#asQueryTripleNestedObject(java.util.TreeMap, Path)}.
+ *
+ * <p>Scores are written with six decimals, rounded half-even like
+ * {@code new DecimalFormat("0.000000")}, without building a formatter or a
+ * string per result. A score is scaled and rounded in double arithmetic when
+ * that cannot round differently from the formatter, which is whenever it is
+ * not within a millionth of halfway between two outputs, and is otherwise
+ * formatted by one {@link DecimalFormat} kept for the whole file.</p>
+ */
+public class SearchResultWriter {
+	/** The number of decimals scores are written with. */
+	public static final int SCALE = 6;
+
+	private static final double SCALED = 1e6;
+
+	/** The largest score rounded in double arithmetic, where its error is still far below a millionth. */
+	private static final double LARGEST = 1000;
+
+	private final JSONStreamWriter writer;
+	private final DecimalFormat format;
+	private final StringBuffer formatted;
+	private final FieldPosition position;
+	private final boolean plain;
+
+	/**
+	 * Creates a writer.
+	 * @param writer the writer to write the results with
+	 */
+	public SearchResultWriter(JSONStreamWriter writer) {
+		this.writer = writer;
+		this.format = new DecimalFormat("0.000000");
+		this.formatted = new StringBuffer();
+		this.position = new FieldPosition(0);
+		DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+		this.plain = symbols.getDecimalSeparator() == '.' && symbols.getZeroDigit() == '0';
+	}
+
+	/**
+	 * Writes the results of every query to a file.
+	 * @param results the results of each query
+	 * @param path the file to write
+	 * @throws IOException
+	 */
+	public static void write(Map<String, ArrayList<SearchResult>> results, Path path) throws IOException {
+		try(JSONStreamWriter writer = JSONStreamWriter.open(path, true)) {
+			new SearchResultWriter(writer).write(results);
+		}
+	}
+
+	/**
+	 * writes the results of every query as a JSON array
+	 * @param results the results of each query
+	 * @throws IOException
+	 */
+	public void write(Map<String, ArrayList<SearchResult>> results) throws IOException {
+		writer.beginArray();
+		for(Map.Entry<String, ArrayList<SearchResult>> query : results.entrySet()) {
+			writer.beginObject();
+			writer.name("queries");
+			writer.value(clean(query.getKey()));
+			writer.name("results");
+			writer.beginArray();
+			for(SearchResult result : query.getValue()) {
+				writer.beginObject();
+				writer.name("where");
+				writer.value(result.getLocation());
+				writer.name("count");
+				writer.value(result.getCount());
+				writer.name("score");
+				score(result.getScore());
+				writer.endObject();
+			}
+			writer.endArray();
+			writer.endObject();
+		}
+		writer.endArray();
+	}
+
+	/**
+	 * writes a score with six decimals, rounded half-even. negative scores,
+	 * including -0.0, are left to the formatter.
+	 * @param score the score
+	 * @throws IOException
+	 */
+	private void score(double score) throws IOException {
+		if(plain && Double.compare(score, 0.0) >= 0 && score < LARGEST) {
+			double scaled = score * SCALED;
+			double floor = Math.floor(scaled);
+			double fraction = scaled - floor;
+			if(Math.abs(fraction - 0.5) > 1e-6) {
+				writer.value((long) floor + (fraction > 0.5 ? 1 : 0), SCALE);
+				return;
+			}
+		}
+		formatted.setLength(0);
+		format.format(score, formatted, position);
+		writer.number(formatted.toString());
+	}
+
+	/**
+	 * removes the commas and brackets the legacy writer removed from query
+	 * keys, without copying keys that have none
+	 * @param query the query key
+	 * @return the key without commas and brackets
+	 */
+	private static String clean(String query) {
+		if(query.indexOf(',') < 0 && query.indexOf('[') < 0 && query.indexOf(']') < 0) {
+			return query;
+		}
+		return query.replace(",", "").replace("[", "").replace("]", "");
+	}
+}
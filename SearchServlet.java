@@ -2,6 +2,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -10,18 +11,21 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import org.apache.commons.text.StringEscapeUtils;
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;;
 
 @SuppressWarnings("serial")
 public class SearchServlet extends HttpServlet {
+	/** The number of results shown on each page. */
+	public static final int RESULTS_PER_PAGE = 10;
+	
 	InvertedIndex index;
 	WorkQueue queue;
+	QueryCache cache;
 	boolean exact;
 	
 	public SearchServlet(InvertedIndex index, WorkQueue queue) {
 		this.index = index;
 		this.queue = queue;
+		cache = new QueryCache(index);
 		exact = false;
 	}
 	
@@ -118,7 +122,13 @@ public class SearchServlet extends HttpServlet {
 				exact = false;
 			}
 									
-			TreeMap<String, ArrayList<SearchResult>> queryPage = search(query, exact);
+			int page = 1;
+			try {
+				page = Math.max(1, Integer.parseInt(request.getParameter("page")));
+			} catch(NumberFormatException e) {
+				page = 1;
+			}
+			TreeMap<String, ArrayList<SearchResult>> queryPage = search(query, exact, page);
 			for(String queries: queryPage.keySet()) {
 				if(privateMode == null) {
 					history.add(queries);
@@ -128,13 +138,22 @@ public class SearchServlet extends HttpServlet {
 					out.printf("<br>");
 					out.printf("No results for this Query");
 				} else {
-					for(SearchResult result: list) {
+					// one result past the page is fetched to tell if there is a next page
+					boolean more = list.size() > RESULTS_PER_PAGE;
+					for(SearchResult result: list.subList(0, Math.min(list.size(), RESULTS_PER_PAGE))) {
 						out.printf("<p><a href=" + result.getLocation()+ ">" + result.getLocation() + "</a>");
 						out.printf("<br/>");
 						if((privateMode == null)) {
 							visited.add(result.getLocation());
 						}
 					}
+					String pageLink = "?query=" + URLEncoder.encode(query, "UTF-8") + (exact ? "&Exact=ON" : "") + "&page=";
+					if(page > 1) {
+						out.printf("<a href=\"%s%d\">Previous</a> ", pageLink, page - 1);
+					}
+					if(more) {
+						out.printf("<a href=\"%s%d\">Next</a>", pageLink, page + 1);
+					}
 					out.printf("<br>");
 					out.printf("<label>%s</label>%n", "Favorite:");
 					out.printf("<input type=\"text\" name=\"Favorite\" value=\"%s\"> %n", request.getParameter("Favorite"));
@@ -157,10 +176,13 @@ public class SearchServlet extends HttpServlet {
 				crawler.seedCrawl(url, 50);
 				out.printf("<br>");
 				out.printf("Seed is currently being crawled");
-				index.addAll(local);	
+				index.update(local);	
 			} catch (MalformedURLException e) {
 				out.printf("<br>");
 				out.printf("Invalid link");
+			} catch (UnsupportedOperationException e) {
+				out.printf("<br>");
+				out.printf("This index is read-only");
 			}
 		}
 		
@@ -233,32 +255,29 @@ public class SearchServlet extends HttpServlet {
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
 	}
 	/**
-	 * Searches through inverted index for query
+	 * Searches through inverted index for one page of results for query, and
+	 * the first result of the next page if there is one. pages are cached until
+	 * the index changes, so repeated queries skip the index.
 	 * @param query the word to be searched for
 	 * @param exact value for partial or exact search
+	 * @param page the page of results, starting at 1
 	 * @return
 	 */
-	private TreeMap<String, ArrayList<SearchResult>> search(String query, Boolean exact) {
+	private TreeMap<String, ArrayList<SearchResult>> search(String query, Boolean exact, int page) {
 		query = StringEscapeUtils.escapeHtml4(query);
 		TreeMap<String, ArrayList<SearchResult>> results = new TreeMap<String, ArrayList<SearchResult>>();
-		Stemmer cleaner = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
 		String[] stemmedwords = TextParser.parse(query);
 		TreeSet<String> queryWords = new TreeSet<String>();
 		for(String stems : stemmedwords) {
-			queryWords.add(cleaner.stem(stems).toString());
+			queryWords.add(StemCache.stem(stems));
 		}
 		String queryLine = String.join(" ", queryWords);
-		synchronized(this) {
-			if(queryWords.size() != 0 && !results.containsKey(queryLine)) {
-				ArrayList<SearchResult> current;
-				if(exact) {
-					current = index.exactSearch(queryWords);
-				} else {
-					current = index.partialSearch(queryWords);
-				}
-				synchronized(this) {
-					results.put(queryLine, current);
-				}
+		if(queryWords.size() != 0) {
+			long offset = (page - 1L) * RESULTS_PER_PAGE;
+			if(offset > Integer.MAX_VALUE) {
+				results.put(queryLine, new ArrayList<SearchResult>());
+			} else {
+				results.put(queryLine, cache.search(queryWords, exact, (int) offset, RESULTS_PER_PAGE + 1));
 			}
 		}
 		return results;
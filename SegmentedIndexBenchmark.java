@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Measures the time to add, remove and update pseudo-random documents in an
+ * {@link InvertedIndex} and a {@link SegmentedInvertedIndex} with small
+ * segments, so many are frozen and merged, and checks both give the same
+ * results for random exact and partial searches while it runs and once the
+ * last words are frozen.
+ */
+public class SegmentedIndexBenchmark {
+
+	/** The number of distinct words in the generated documents. */
+	private static final int WORDS = 5000;
+
+	/** The most words in each generated document. */
+	private static final int LENGTH = 200;
+
+	/**
+	 * Builds one pseudo-random document as a local index.
+	 *
+	 * @param random the source of words
+	 * @param location the name of the document
+	 * @return the local index
+	 */
+	private static InvertedIndex document(Random random, String location) {
+		InvertedIndex local = new InvertedIndex();
+		int length = 1 + random.nextInt(LENGTH);
+		for(int position = 1; position <= length; position++) {
+			local.addWord(word(random), location, position);
+		}
+		return local;
+	}
+
+	/**
+	 * Returns a word from a skewed distribution, so a few words are common.
+	 *
+	 * @param random the source of randomness
+	 * @return the word
+	 */
+	private static String word(Random random) {
+		return "w" + (int) Math.pow(WORDS, random.nextDouble());
+	}
+
+	/**
+	 * Tells if two lists of results have the same locations, counts and
+	 * scores in the same order.
+	 *
+	 * @param expected the results of the tree index
+	 * @param actual the results of the segmented index
+	 * @return true if they are the same
+	 */
+	private static boolean same(List<SearchResult> expected, List<SearchResult> actual) {
+		if(expected.size() != actual.size()) {
+			return false;
+		}
+		for(int i = 0; i < expected.size(); i++) {
+			SearchResult a = expected.get(i);
+			SearchResult b = actual.get(i);
+			if(!a.getLocation().equals(b.getLocation()) || a.getCount() != b.getCount() || a.getScore() != b.getScore()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs random exact and partial searches against both indexes.
+	 *
+	 * @param random the source of queries
+	 * @param tree the index to compare against
+	 * @param segmented the index to check
+	 * @param queries the number of searches of each kind
+	 * @return the number of searches whose results differ
+	 */
+	private static int compare(Random random, InvertedIndex tree, SegmentedInvertedIndex segmented, int queries) {
+		int differ = 0;
+		for(int i = 0; i < queries; i++) {
+			TreeSet<String> query = new TreeSet<String>();
+			query.add(word(random));
+			query.add(word(random).substring(0, 2));
+			if(!same(tree.exactSearch(query), segmented.exactSearch(query))) {
+				differ++;
+			}
+			if(!same(tree.partialSearch(query), segmented.partialSearch(query))) {
+				differ++;
+			}
+		}
+		return differ;
+	}
+
+	/**
+	 * Adds the same documents to both indexes, removing and updating some of
+	 * them, and reports the time each took and the searches that differ.
+	 *
+	 * @param documents the number of documents
+	 * @param threshold the postings the segmented index holds in memory
+	 */
+	private static void measure(int documents, int threshold) {
+		InvertedIndex tree = new InvertedIndex();
+		SegmentedInvertedIndex segmented = new SegmentedInvertedIndex(threshold);
+		Random random = new Random(212);
+		Random queries = new Random(313);
+		long treeNanos = 0;
+		long segmentedNanos = 0;
+		int differ = 0;
+		for(int i = 0; i < documents; i++) {
+			boolean update = i > 0 && random.nextInt(10) == 0;
+			InvertedIndex local = document(random, "doc" + (update ? random.nextInt(i) : i));
+			List<String> removed = new ArrayList<String>();
+			if(i > 0 && random.nextInt(20) == 0) {
+				removed.add("doc" + random.nextInt(i));
+			}
+
+			long start = System.nanoTime();
+			tree.removeAll(removed);
+			if(update) {
+				tree.update(local);
+			} else {
+				tree.addAll(local);
+			}
+			treeNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			segmented.removeAll(removed);
+			if(update) {
+				segmented.update(local);
+			} else {
+				segmented.addAll(local);
+			}
+			segmentedNanos += System.nanoTime() - start;
+
+			if(i % 500 == 0) {
+				differ += compare(queries, tree, segmented, 20);
+			}
+		}
+		segmented.flush();
+		differ += compare(queries, tree, segmented, 200);
+
+		System.out.printf("%-24s %8.1f ms%n", "InvertedIndex", treeNanos / 1e6);
+		System.out.printf("%-24s %8.1f ms %d segments%n", "SegmentedInvertedIndex", segmentedNanos / 1e6,
+				segmented.segments().size());
+		System.out.println("searches with differing results: " + differ);
+		System.out.println("same words, locations and positions: " + tree.toString().equals(segmented.toString()));
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args optional number of documents and flush threshold, default 10000 and 20000
+	 */
+	public static void main(String[] args) {
+		int documents = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int threshold = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		measure(documents, threshold);
+	}
+}
@@ -0,0 +1,637 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A thread-safe inverted index built as a log of immutable segments. Words are
+ * added to a small in-memory index, which is frozen into an {@link IndexSegment}
+ * once it holds enough postings, so the cost of adding a document depends on
+ * the size of that small index and not on the size of the whole index.
+ * Searches ask every segment and add up the counts of each location.
+ *
+ * <p>A flush only swaps in a new in-memory index under the write lock. The
+ * old one is frozen outside the lock, so writers and searches are not held up
+ * meanwhile, and it stays searchable until its segment is published.</p>
+ *
+ * <p>Segments are merged in the background by tiers: once there are
+ * {@value #MERGE_FACTOR} segments of about the same size they are merged into
+ * one segment of the next tier, so there are only a few segments per tier and
+ * every posting is rewritten a logarithmic number of times.</p>
+ *
+ * <p>Removed locations are dropped from the words held in memory and marked
+ * as tombstones in every segment (see {@link IndexSegment#delete(Collection)}).
+ * Merging leaves tombstones out of the merged segment, and a segment with more
+ * than {@link #PURGE_RATIO} of its locations removed is purged in the
+ * background even if its tier is not full.</p>
+ *
+ * <p>A {@link PrefixCache} is used by the words held in memory, and cleared
+ * whenever they are frozen. Segments look up a prefix by its range of word
+ * ids, so they need no cache.</p>
+ */
+public class SegmentedInvertedIndex extends ThreadSafeInvertedIndex {
+	/** The default number of postings held in memory before they are frozen. */
+	public static final int DEFAULT_FLUSH_THRESHOLD = 100000;
+
+	/** The number of segments of one tier merged into a segment of the next. */
+	public static final int MERGE_FACTOR = 4;
+
+	/** The fraction of a segment's locations that may be removed before it is purged. */
+	public static final double PURGE_RATIO = 0.25;
+
+	private final int threshold;
+	private final ReadWriteLock lock;
+	private final ConcurrentHashMap<String, Integer> totalWords;
+	private final AtomicBoolean merging;
+	private InvertedIndex memory;
+	private final ArrayList<Flush> flushing;
+	private long buffered;
+	private volatile List<IndexSegment> segments;
+
+	/**
+	 * Creates a segmented index with the default flush threshold.
+	 */
+	public SegmentedInvertedIndex() {
+		this(DEFAULT_FLUSH_THRESHOLD);
+	}
+
+	/**
+	 * Creates a segmented index.
+	 * @param threshold the number of postings held in memory before they are frozen
+	 */
+	public SegmentedInvertedIndex(int threshold) {
+		super();
+		this.threshold = threshold;
+		this.lock = new ReadWriteLock();
+		this.totalWords = new ConcurrentHashMap<String, Integer>();
+		this.merging = new AtomicBoolean(false);
+		this.memory = new InvertedIndex();
+		this.flushing = new ArrayList<Flush>();
+		this.buffered = 0;
+		this.segments = Collections.emptyList();
+	}
+
+	/**
+	 * returns the frozen segments, oldest first
+	 * @return an unmodifiable list of the segments
+	 */
+	public List<IndexSegment> segments() {
+		return segments;
+	}
+
+	@Override
+	public void setPrefixCache(PrefixCache prefixCache) {
+		lock.lockReadWrite();
+		try {
+			super.setPrefixCache(prefixCache);
+			memory.setPrefixCache(prefixCache);
+		}
+		finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	@Override
+	public void addWord(String word, String document, int position) {
+		boolean full;
+		lock.lockReadWrite();
+		try {
+			int before = memory.getTotal(document);
+			memory.addWord(word, document, position);
+			if(memory.getTotal(document) > before) {
+				totalWords.merge(document, 1, Integer::sum);
+				buffered++;
+			}
+			full = buffered >= threshold;
+		}
+		finally {
+			lock.unlockReadWrite();
+		}
+		if(full) {
+			flush();
+		}
+		invalidatePrefixes(word);
+		advanceGeneration();
+	}
+
+	@Override
+	public void addAll(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
+		boolean full;
+		lock.lockReadWrite();
+		try {
+			full = add(local);
+		}
+		finally {
+			lock.unlockReadWrite();
+		}
+		if(full) {
+			flush();
+		}
+		for(String word : local.getWords()) {
+			invalidatePrefixes(word);
+		}
+		advanceGeneration();
+	}
+
+	/**
+	 * adds the words of a local index to the words held in memory. the caller
+	 * must hold the write lock.
+	 * @param local the words to add
+	 * @return true if the words held in memory should be frozen
+	 */
+	private boolean add(InvertedIndex local) {
+		for(String location : local.getLocations()) {
+			totalWords.merge(location, local.getTotal(location), Integer::sum);
+			buffered += local.getTotal(location);
+		}
+		memory.addAll(local);
+		return buffered >= threshold;
+	}
+
+	/**
+	 * Removes the locations from the words held in memory and marks them as
+	 * tombstones in every segment at once, so a search sees all of them removed
+	 * or none, and starts purging segments in the background if needed.
+	 */
+	@Override
+	public void removeAll(Collection<String> locations) {
+		if(locations.isEmpty()) {
+			return;
+		}
+		HashSet<String> removed = new HashSet<String>(locations);
+		lock.lockReadWrite();
+		try {
+			remove(removed);
+		}
+		finally {
+			lock.unlockReadWrite();
+		}
+		advanceGeneration();
+		startMerging();
+	}
+
+	/**
+	 * Removes the locations and adds their new words under one write lock, so
+	 * no search finds them missing and two updates of one location cannot both
+	 * add it.
+	 */
+	@Override
+	public void update(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
+		HashSet<String> removed = new HashSet<String>(local.getLocations());
+		boolean full;
+		lock.lockReadWrite();
+		try {
+			remove(removed);
+			full = add(local);
+		}
+		finally {
+			lock.unlockReadWrite();
+		}
+		if(full) {
+			flush();
+		}
+		for(String word : local.getWords()) {
+			invalidatePrefixes(word);
+		}
+		advanceGeneration();
+		startMerging();
+	}
+
+	/**
+	 * removes locations from the words held in memory and marks them as
+	 * tombstones in every segment. the caller must hold the write lock.
+	 * @param removed the locations to remove
+	 */
+	private void remove(HashSet<String> removed) {
+		for(String location : removed) {
+			buffered -= memory.getTotal(location);
+		}
+		memory.removeAll(removed);
+		for(Flush flush : flushing) {
+			flush.remove(removed);
+		}
+		synchronized(this) {
+			ArrayList<IndexSegment> next = new ArrayList<IndexSegment>(segments.size());
+			for(IndexSegment segment : segments) {
+				next.add(segment.delete(removed));
+			}
+			segments = Collections.unmodifiableList(next);
+		}
+		totalWords.keySet().removeAll(removed);
+	}
+
+	/**
+	 * freezes the words held in memory into a new segment, and starts merging
+	 * segments in the background if a tier is full. the words are swapped for
+	 * an empty index under the write lock, frozen without holding it and
+	 * searched as they were until the segment is published.
+	 */
+	public void flush() {
+		Flush flush;
+		lock.lockReadWrite();
+		try {
+			if(memory.size() == 0) {
+				return;
+			}
+			flush = new Flush(memory);
+			flushing.add(flush);
+			PrefixCache cache = getPrefixCache();
+			memory.setPrefixCache(null);
+			memory = new InvertedIndex();
+			buffered = 0;
+			if(cache != null) {
+				memory.setPrefixCache(cache);
+				cache.clear();
+			}
+		}
+		finally {
+			lock.unlockReadWrite();
+		}
+		IndexSegment segment = flush.words.freeze();
+		lock.lockReadWrite();
+		try {
+			segment = segment.delete(flush.removed);
+			synchronized(this) {
+				ArrayList<IndexSegment> next = new ArrayList<IndexSegment>(segments);
+				next.add(segment);
+				segments = Collections.unmodifiableList(next);
+			}
+			flushing.remove(flush);
+		}
+		finally {
+			lock.unlockReadWrite();
+		}
+		startMerging();
+	}
+
+	/**
+	 * returns the words being frozen as searches should see them. the caller
+	 * must hold the lock.
+	 * @return the views of the words being frozen, which are never changed
+	 */
+	private ArrayList<InvertedIndex> flushingViews() {
+		ArrayList<InvertedIndex> views = new ArrayList<InvertedIndex>(flushing.size());
+		for(Flush flush : flushing) {
+			views.add(flush.view);
+		}
+		return views;
+	}
+
+	/**
+	 * starts merging and purging segments in the background, unless that is
+	 * already being done
+	 */
+	private void startMerging() {
+		if(merging.compareAndSet(false, true)) {
+			Thread merger = new Thread(this::merge, "segment-merger");
+			merger.setDaemon(true);
+			merger.start();
+		}
+	}
+
+	/**
+	 * merges full tiers of segments and purges segments with too many removed
+	 * locations until none is left, then lets the next flush start merging
+	 * again. a merge is thrown away and tried again if locations were removed
+	 * from its segments meanwhile, since their tombstones would be lost.
+	 */
+	private void merge() {
+		try {
+			List<IndexSegment> tier;
+			while((tier = fullTier()) != null || (tier = purgeable()) != null) {
+				IndexSegment merged = IndexSegment.merge(tier);
+				synchronized(this) {
+					if(!segments.containsAll(tier)) {
+						continue;
+					}
+					ArrayList<IndexSegment> next = new ArrayList<IndexSegment>();
+					boolean added = false;
+					for(IndexSegment segment : segments) {
+						if(!tier.contains(segment)) {
+							next.add(segment);
+						} else if(!added) {
+							if(merged.locationCount() > 0) {
+								next.add(merged);
+							}
+							added = true;
+						}
+					}
+					segments = Collections.unmodifiableList(next);
+				}
+			}
+		}
+		finally {
+			merging.set(false);
+		}
+	}
+
+	/**
+	 * finds a segment with more than PURGE_RATIO of its locations removed
+	 * @return the segment, or null if there is none
+	 */
+	private List<IndexSegment> purgeable() {
+		for(IndexSegment segment : segments) {
+			if(segment.deletedCount() > segment.locationCount() * PURGE_RATIO) {
+				return Collections.singletonList(segment);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * finds the lowest tier holding enough segments to merge. a segment is in
+	 * tier t if it holds about threshold * MERGE_FACTOR^t words.
+	 * @return the segments of the tier, or null if no tier is full
+	 */
+	private List<IndexSegment> fullTier() {
+		TreeMap<Integer, List<IndexSegment>> tiers = new TreeMap<Integer, List<IndexSegment>>();
+		for(IndexSegment segment : segments) {
+			int tier = 0;
+			for(long size = segment.wordCount() / Math.max(threshold, 1); size >= MERGE_FACTOR; size /= MERGE_FACTOR) {
+				tier++;
+			}
+			tiers.computeIfAbsent(tier, t -> new ArrayList<IndexSegment>()).add(segment);
+		}
+		for(List<IndexSegment> tier : tiers.values()) {
+			if(tier.size() >= MERGE_FACTOR) {
+				return tier.subList(0, MERGE_FACTOR);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected ArrayList<SearchResult> exactMatches(TreeSet<String> queryWords) {
+		ArrayList<ArrayList<SearchResult>> found = new ArrayList<ArrayList<SearchResult>>();
+		List<IndexSegment> frozen;
+		ArrayList<InvertedIndex> views;
+		lock.lockReadOnly();
+		try {
+			found.add(memory.exactMatches(queryWords));
+			views = flushingViews();
+			frozen = segments;
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+		for(InvertedIndex view : views) {
+			found.add(view.exactMatches(queryWords));
+		}
+		for(IndexSegment segment : frozen) {
+			found.add(segment.exactMatches(queryWords));
+		}
+		return combine(found);
+	}
+
+	@Override
+	protected ArrayList<SearchResult> partialMatches(TreeSet<String> queryWords) {
+		ArrayList<ArrayList<SearchResult>> found = new ArrayList<ArrayList<SearchResult>>();
+		List<IndexSegment> frozen;
+		ArrayList<InvertedIndex> views;
+		lock.lockReadOnly();
+		try {
+			found.add(memory.partialMatches(queryWords));
+			views = flushingViews();
+			frozen = segments;
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+		for(InvertedIndex view : views) {
+			found.add(view.partialMatches(queryWords));
+		}
+		for(IndexSegment segment : frozen) {
+			found.add(segment.partialMatches(queryWords));
+		}
+		return combine(found);
+	}
+
+	/**
+	 * adds up the counts each part of the index found for a location, scored
+	 * against the word count of the location over the whole index
+	 * @param found the results of each part
+	 * @return the search results in the order they were found
+	 */
+	private ArrayList<SearchResult> combine(ArrayList<ArrayList<SearchResult>> found) {
+		if(found.size() == 1) {
+			return found.get(0);
+		}
+		HashMap<String, int[]> counts = new HashMap<String, int[]>();
+		ArrayList<String> order = new ArrayList<String>();
+		for(ArrayList<SearchResult> results : found) {
+			for(SearchResult result : results) {
+				int[] count = counts.get(result.getLocation());
+				if(count == null) {
+					counts.put(result.getLocation(), new int[] { result.getCount() });
+					order.add(result.getLocation());
+				} else {
+					count[0] += result.getCount();
+				}
+			}
+		}
+		ArrayList<SearchResult> combined = new ArrayList<SearchResult>(order.size());
+		for(String location : order) {
+			combined.add(new SearchResult(location, counts.get(location)[0], getTotal(location)));
+		}
+		return combined;
+	}
+
+	@Override
+	public void output(Path outputfilepath, boolean pretty) throws IOException {
+		asTree().output(outputfilepath, pretty);
+	}
+
+	@Override
+	public void countWords(Path file) throws IOException {
+		Files.createFile(file);
+		TreeJSONWriter.asObject(new TreeMap<String, Integer>(totalWords), file);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return size(word) > 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return size(word, location) > 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		return getPositions(word, location).contains(position);
+	}
+
+	@Override
+	public int size() {
+		return getWords().size();
+	}
+
+	@Override
+	public int size(String word) {
+		return getLocations(word).size();
+	}
+
+	@Override
+	public int size(String word, String location) {
+		return getPositions(word, location).size();
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		TreeSet<String> words = new TreeSet<String>();
+		List<IndexSegment> frozen;
+		ArrayList<InvertedIndex> views;
+		lock.lockReadOnly();
+		try {
+			words.addAll(memory.getWords());
+			views = flushingViews();
+			frozen = segments;
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+		for(InvertedIndex view : views) {
+			words.addAll(view.getWords());
+		}
+		for(IndexSegment segment : frozen) {
+			words.addAll(segment.getWords());
+		}
+		return Collections.unmodifiableNavigableSet(words);
+	}
+
+	@Override
+	public Set<String> getLocations() {
+		return Collections.unmodifiableSet(new TreeSet<String>(totalWords.keySet()));
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		TreeSet<String> locations = new TreeSet<String>();
+		List<IndexSegment> frozen;
+		ArrayList<InvertedIndex> views;
+		lock.lockReadOnly();
+		try {
+			locations.addAll(memory.getLocations(word));
+			views = flushingViews();
+			frozen = segments;
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+		for(InvertedIndex view : views) {
+			locations.addAll(view.getLocations(word));
+		}
+		for(IndexSegment segment : frozen) {
+			locations.addAll(segment.getLocations(word));
+		}
+		return Collections.unmodifiableSet(locations);
+	}
+
+	@Override
+	public SortedSet<Integer> getPositions(String word, String location) {
+		TreeSet<Integer> positions = new TreeSet<Integer>();
+		List<IndexSegment> frozen;
+		ArrayList<InvertedIndex> views;
+		lock.lockReadOnly();
+		try {
+			positions.addAll(memory.getPositions(word, location));
+			views = flushingViews();
+			frozen = segments;
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+		for(InvertedIndex view : views) {
+			positions.addAll(view.getPositions(word, location));
+		}
+		for(IndexSegment segment : frozen) {
+			positions.addAll(segment.getPositions(word, location));
+		}
+		return Collections.unmodifiableSortedSet(positions);
+	}
+
+	@Override
+	public int getTotal(String location) {
+		return totalWords.getOrDefault(location, 0);
+	}
+
+	/**
+	 * Returns a copy of the whole index, since the words held in memory are
+	 * still being added to.
+	 */
+	@Override
+	protected InvertedIndex asTree() {
+		InvertedIndex copy;
+		List<IndexSegment> frozen;
+		ArrayList<InvertedIndex> views;
+		lock.lockReadOnly();
+		try {
+			copy = new InvertedIndex().merged(memory);
+			views = flushingViews();
+			frozen = segments;
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+		InvertedIndex tree = new InvertedIndex();
+		for(IndexSegment segment : frozen) {
+			tree.addAll(segment);
+		}
+		for(InvertedIndex view : views) {
+			tree.addAll(new InvertedIndex().merged(view));
+		}
+		tree.addAll(copy);
+		return tree;
+	}
+
+	@Override
+	public String toString() {
+		return asTree().toString();
+	}
+
+	/**
+	 * Words taken out of memory to be frozen into a segment. Searches see them
+	 * through a view without the locations removed since, which are marked as
+	 * tombstones in the segment once it is frozen. The view is only replaced
+	 * under the write lock.
+	 */
+	private static class Flush {
+		private final InvertedIndex words;
+		private final HashSet<String> removed;
+		private InvertedIndex view;
+
+		/**
+		 * Initializes the words to freeze
+		 * @param words the words taken out of memory, never changed afterwards
+		 */
+		private Flush(InvertedIndex words) {
+			this.words = words;
+			this.removed = new HashSet<String>();
+			this.view = words;
+		}
+
+		/**
+		 * leaves removed locations out of the view and remembers them for the segment
+		 * @param locations the locations removed
+		 */
+		private void remove(HashSet<String> locations) {
+			removed.addAll(locations);
+			view = view.without(locations);
+		}
+	}
+}
@@ -0,0 +1,332 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes an index as JSON split into shards of words, one file per shard,
+ * written in parallel on a {@link WorkQueue}. The index is frozen into an
+ * {@link IndexSegment} first, so the shards are written from one snapshot
+ * without holding any lock on the index, and the words are split where the
+ * shards hold about the same number of bytes of postings.
+ *
+ * <p>Each shard is a JSON object of its own, so shards can be read in
+ * parallel, and the words of shard n all sort before those of shard n + 1. A
+ * manifest ({@value #MANIFEST}) lists the format and then, one line per shard
+ * in order, its file, number of words, size in bytes and first and last word,
+ * separated by tabs. {@link #concatenate(Path, Path)} joins the shards into
+ * the same file that writing the whole index at once gives.</p>
+ */
+public class ShardedExporter {
+	/** The file listing the shards in order. */
+	public static final String MANIFEST = "manifest.tsv";
+
+	private static final byte[] SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+	private final WorkQueue queue;
+
+	/**
+	 * Creates an exporter.
+	 * @param queue the WorkQueue to write and read shards with, or null to do them one by one
+	 */
+	public ShardedExporter(WorkQueue queue) {
+		this.queue = queue;
+	}
+
+	/**
+	 * Writes the index to a directory as shards and a manifest.
+	 * @param index the index to write
+	 * @param directory the directory to write to
+	 * @param shards the number of shards wanted
+	 * @param pretty true for one element per line, false for no whitespace
+	 * @throws IOException
+	 */
+	public void export(InvertedIndex index, Path directory, int shards, boolean pretty) throws IOException {
+		IndexSegment segment = index.freeze().purge();
+		List<String> firsts = segment.split(Math.max(shards, 1));
+		Files.createDirectories(directory);
+		AtomicReference<IOException> failed = new AtomicReference<IOException>();
+		for(int i = 0; i < firsts.size(); i++) {
+			String from = firsts.get(i);
+			String to = i + 1 < firsts.size() ? firsts.get(i + 1) : null;
+			Path file = directory.resolve(name(i));
+			run(() -> {
+				try(JSONStreamWriter writer = JSONStreamWriter.open(file, pretty)) {
+					segment.output(writer, from, to);
+				} catch(IOException e) {
+					failed.compareAndSet(null, e);
+				}
+			});
+		}
+		finish(failed);
+
+		NavigableSet<String> words = segment.getWords();
+		try(BufferedWriter out = Files.newBufferedWriter(directory.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+			out.write(pretty ? "pretty" : "compact");
+			out.newLine();
+			for(int i = 0; i < firsts.size(); i++) {
+				String from = firsts.get(i);
+				String to = i + 1 < firsts.size() ? firsts.get(i + 1) : null;
+				NavigableSet<String> range = to == null ? words.tailSet(from, true) : words.subSet(from, true, to, false);
+				out.write(String.join("\t", name(i), Integer.toString(range.size()),
+						Long.toString(Files.size(directory.resolve(name(i)))), from, range.last()));
+				out.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Joins the shards listed in a manifest into one JSON file, the same as
+	 * writing the whole index to it at once. The shards are copied by the file
+	 * system without being parsed.
+	 * @param directory the directory holding the shards and manifest
+	 * @param file the file to write
+	 * @throws IOException
+	 */
+	public static void concatenate(Path directory, Path file) throws IOException {
+		List<String> lines = Files.readAllLines(directory.resolve(MANIFEST), StandardCharsets.UTF_8);
+		boolean pretty = lines.get(0).equals("pretty");
+		byte[] separator = pretty ? SEPARATOR : new byte[0];
+		try(FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(out, new byte[] { '{' });
+			write(out, separator);
+			for(int i = 1; i < lines.size(); i++) {
+				if(i > 1) {
+					write(out, new byte[] { ',' });
+					write(out, separator);
+				}
+				try(FileChannel in = FileChannel.open(directory.resolve(lines.get(i).split("\t")[0]), StandardOpenOption.READ)) {
+					long start = 1 + separator.length;
+					long end = in.size() - separator.length - 1;
+					while(start < end) {
+						start += in.transferTo(start, end - start, out);
+					}
+				}
+			}
+			if(lines.size() > 1) {
+				write(out, separator);
+			}
+			write(out, new byte[] { '}' });
+		}
+	}
+
+	/**
+	 * Reads the shards listed in a manifest into an index, each shard by its
+	 * own task on the queue.
+	 * @param directory the directory holding the shards and manifest
+	 * @param index the index to add to
+	 * @throws IOException
+	 */
+	public void load(Path directory, InvertedIndex index) throws IOException {
+		BulkAdder adder = new BulkAdder(index);
+		AtomicReference<IOException> failed = new AtomicReference<IOException>();
+		try(BufferedReader in = Files.newBufferedReader(directory.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+			in.readLine();
+			String line;
+			while((line = in.readLine()) != null) {
+				Path file = directory.resolve(line.split("\t")[0]);
+				run(() -> {
+					try(InputStream shard = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+						InvertedIndex local = new InvertedIndex();
+						new ShardReader(shard).read(local);
+						adder.add(local);
+					} catch(IOException e) {
+						failed.compareAndSet(null, e);
+					}
+				});
+			}
+		}
+		finish(failed);
+		adder.flushAll();
+	}
+
+	/**
+	 * returns the file name of a shard
+	 * @param shard the number of the shard
+	 * @return the file name
+	 */
+	private static String name(int shard) {
+		return String.format("index-%05d.json", shard);
+	}
+
+	/**
+	 * runs a task on the queue, or right away if there is none
+	 * @param task the task
+	 */
+	private void run(Runnable task) {
+		if(queue == null) {
+			task.run();
+		} else {
+			queue.execute(task);
+		}
+	}
+
+	/**
+	 * waits for the tasks and throws the first error any of them had
+	 * @param failed the first error, if any
+	 * @throws IOException
+	 */
+	private void finish(AtomicReference<IOException> failed) throws IOException {
+		if(queue != null) {
+			queue.finish();
+		}
+		if(failed.get() != null) {
+			throw failed.get();
+		}
+	}
+
+	/**
+	 * writes all of some bytes to a channel
+	 * @param out the channel
+	 * @param bytes the bytes
+	 * @throws IOException
+	 */
+	private static void write(FileChannel out, byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while(buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * Reads a shard written by {@link JSONStreamWriter}: an object of words,
+	 * each an object of locations, each an array of positions. Strings are
+	 * read as they were written, without escapes. The shard is parsed as it is
+	 * read through a buffer, looking one byte ahead, so it is never held whole
+	 * and may pass 2 GB.
+	 */
+	private static class ShardReader {
+		private static final int NONE = -2;
+
+		private final InputStream in;
+		private final ByteArrayOutputStream text;
+		private int ahead;
+		private long at;
+
+		private ShardReader(InputStream in) {
+			this.in = in;
+			this.text = new ByteArrayOutputStream();
+			this.ahead = NONE;
+			this.at = 0;
+		}
+
+		/**
+		 * adds every position of the shard to an index
+		 * @param index the index to add to
+		 * @throws IOException if the shard cannot be read or is not in the expected form
+		 */
+		private void read(InvertedIndex index) throws IOException {
+			expect('{');
+			while(!next('}')) {
+				String word = string();
+				expect(':');
+				expect('{');
+				while(!next('}')) {
+					String location = string();
+					expect(':');
+					expect('[');
+					while(!next(']')) {
+						index.addWord(word, location, number());
+					}
+				}
+			}
+		}
+
+		/**
+		 * skips whitespace and a comma, then tells if the next byte closes the
+		 * current object or array, reading it if it does
+		 */
+		private boolean next(char close) throws IOException {
+			skip();
+			if(peek() == ',') {
+				take();
+				skip();
+			}
+			if(peek() < 0) {
+				throw new IOException("Unexpected end of shard");
+			}
+			if(peek() == close) {
+				take();
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) throws IOException {
+			skip();
+			if(peek() != c) {
+				throw new IOException("Expected " + c + " at byte " + at);
+			}
+			take();
+		}
+
+		private String string() throws IOException {
+			expect('"');
+			text.reset();
+			while(peek() >= 0 && peek() != '"') {
+				text.write(take());
+			}
+			expect('"');
+			return new String(text.toByteArray(), StandardCharsets.UTF_8);
+		}
+
+		private int number() throws IOException {
+			skip();
+			boolean negative = peek() == '-';
+			if(negative) {
+				take();
+			}
+			long start = at;
+			int value = 0;
+			while(peek() >= '0' && peek() <= '9') {
+				value = value * 10 + take() - '0';
+			}
+			if(at == start) {
+				throw new IOException("Expected a number at byte " + at);
+			}
+			return negative ? -value : value;
+		}
+
+		private void skip() throws IOException {
+			while(peek() == ' ' || peek() == '\t' || peek() == '\r' || peek() == '\n') {
+				take();
+			}
+		}
+
+		/**
+		 * returns the next byte without reading past it
+		 * @return the byte, or -1 at the end of the shard
+		 */
+		private int peek() throws IOException {
+			if(ahead == NONE) {
+				ahead = in.read();
+			}
+			return ahead;
+		}
+
+		/**
+		 * reads the next byte
+		 * @return the byte, or -1 at the end of the shard
+		 */
+		private int take() throws IOException {
+			int b = peek();
+			ahead = NONE;
+			if(b >= 0) {
+				at++;
+			}
+			return b;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A thread-safe inverted index whose readers never lock. Every read goes to
+ * the current snapshot, an {@link InvertedIndex} that is never changed once it
+ * is published. Writers build the next generation with
+ * {@link InvertedIndex#merged(InvertedIndex)}, which shares every posting the
+ * write does not touch, and publish it with a single volatile write, so
+ * searches keep running against the previous generation while a crawl is
+ * merged in.
+ *
+ * <p>Each write copies the word map of the current generation, so writes
+ * should be batched: build a local index (for example with a
+ * {@link WebCrawler}) and add it with {@link #addAll(InvertedIndex)} once.</p>
+ *
+ * <p>A {@link PrefixCache} is handed to each generation as it is published
+ * and taken from the one it replaces, so a search still running against an
+ * old generation cannot cache prefixes the new one no longer matches.</p>
+ */
+public class SnapshotInvertedIndex extends ThreadSafeInvertedIndex {
+	private volatile InvertedIndex snapshot;
+
+	/**
+	 * Creates an empty snapshot index.
+	 */
+	public SnapshotInvertedIndex() {
+		super();
+		snapshot = new InvertedIndex();
+	}
+
+	/**
+	 * Returns the current generation. It is never changed, so several reads
+	 * made through it see the same index.
+	 * @return the current snapshot
+	 */
+	public InvertedIndex snapshot() {
+		return snapshot;
+	}
+
+	@Override
+	public synchronized void setPrefixCache(PrefixCache prefixCache) {
+		super.setPrefixCache(prefixCache);
+		snapshot.setPrefixCache(prefixCache);
+	}
+
+	@Override
+	public synchronized void addWord(String word, String document, int position) {
+		InvertedIndex local = new InvertedIndex();
+		local.addWord(word, document, position);
+		publish(snapshot.merged(local));
+		invalidatePrefixes(word);
+		advanceGeneration();
+	}
+
+	@Override
+	public synchronized void addAll(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
+		publish(snapshot.merged(local));
+		for(String word : local.getWords()) {
+			invalidatePrefixes(word);
+		}
+		advanceGeneration();
+	}
+
+	@Override
+	public synchronized void removeAll(Collection<String> locations) {
+		publish(snapshot.without(locations));
+		clearPrefixes();
+		advanceGeneration();
+	}
+
+	/**
+	 * Publishes the index without the locations and with their new words as
+	 * one generation, so no search sees the locations missing.
+	 */
+	@Override
+	public synchronized void update(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
+		publish(snapshot.without(local.getLocations()).merged(local));
+		clearPrefixes();
+		advanceGeneration();
+	}
+
+	/**
+	 * publishes the next generation, moving the prefix cache to it. the
+	 * prefixes the write changed must be invalidated afterwards.
+	 * @param next the next generation
+	 */
+	private void publish(InvertedIndex next) {
+		InvertedIndex previous = snapshot;
+		next.setPrefixCache(getPrefixCache());
+		snapshot = next;
+		previous.setPrefixCache(null);
+	}
+
+	/**
+	 * removes every cached prefix, since removing locations may change any of them
+	 */
+	private void clearPrefixes() {
+		PrefixCache cache = getPrefixCache();
+		if(cache != null) {
+			cache.clear();
+		}
+	}
+
+	@Override
+	protected ArrayList<SearchResult> exactMatches(TreeSet<String> queryWords) {
+		return snapshot.exactMatches(queryWords);
+	}
+
+	@Override
+	protected ArrayList<SearchResult> partialMatches(TreeSet<String> queryWords) {
+		return snapshot.partialMatches(queryWords);
+	}
+
+	@Override
+	public void output(Path outputfilepath, boolean pretty) throws IOException {
+		snapshot.output(outputfilepath, pretty);
+	}
+
+	@Override
+	public void countWords(Path file) throws IOException {
+		snapshot.countWords(file);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return snapshot.contains(word);
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return snapshot.contains(word, location);
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		return snapshot.contains(word, location, position);
+	}
+
+	@Override
+	public int size() {
+		return snapshot.size();
+	}
+
+	@Override
+	public int size(String word) {
+		return snapshot.size(word);
+	}
+
+	@Override
+	public int size(String word, String location) {
+		return snapshot.size(word, location);
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		return snapshot.getWords();
+	}
+
+	@Override
+	public Set<String> getLocations() {
+		return snapshot.getLocations();
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		return snapshot.getLocations(word);
+	}
+
+	@Override
+	public SortedSet<Integer> getPositions(String word, String location) {
+		return snapshot.getPositions(word, location);
+	}
+
+	@Override
+	public int getTotal(String location) {
+		return snapshot.getTotal(location);
+	}
+
+	/**
+	 * Returns a copy of the current generation, since the index calling
+	 * addAll may keep and change the postings it is given.
+	 */
+	@Override
+	protected InvertedIndex asTree() {
+		return new InvertedIndex().merged(snapshot);
+	}
+
+	@Override
+	public String toString() {
+		return snapshot.toString();
+	}
+}
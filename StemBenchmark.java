@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Measures the time and memory allocated per word of stemming every word, as
+ * indexing used to, against looking words up in a {@link StemCache}. Words are
+ * read from the text files under a directory, or drawn from a Zipf distribution
+ * over a generated English-like vocabulary if none is given.
+ */
+public class StemBenchmark {
+
+	private static final String[] STEMS = { "run", "connect", "index", "search", "engin", "crawl", "pars", "queri",
+			"document", "locat", "result", "walk", "jump", "hous", "nation", "form", "general", "class" };
+	private static final String[] SUFFIXES = { "", "s", "ing", "ed", "er", "ers", "ation", "ations", "ness", "ly",
+			"ive", "ize", "izing", "ional", "ment", "ments" };
+
+	/**
+	 * Draws words from a Zipf distribution over a generated vocabulary.
+	 *
+	 * @param count the number of words
+	 * @return the words
+	 */
+	private static List<String> generate(int count) {
+		ArrayList<String> vocabulary = new ArrayList<String>();
+		Random random = new Random(212);
+		for(int i = 0; i < 50000; i++) {
+			String stem = STEMS[random.nextInt(STEMS.length)] + (i < STEMS.length ? "" : Integer.toString(i, 26).replaceAll("[0-9]", "e"));
+			vocabulary.add(stem + SUFFIXES[random.nextInt(SUFFIXES.length)]);
+		}
+		double[] weights = new double[vocabulary.size()];
+		double sum = 0;
+		for(int i = 0; i < weights.length; i++) {
+			sum += 1.0 / (i + 1);
+			weights[i] = sum;
+		}
+		ArrayList<String> words = new ArrayList<String>(count);
+		for(int i = 0; i < count; i++) {
+			double target = random.nextDouble() * sum;
+			int low = 0;
+			int high = weights.length - 1;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(weights[middle] < target) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			words.add(new String(vocabulary.get(low)));
+		}
+		return words;
+	}
+
+	/**
+	 * Reads every word of the text files under a directory.
+	 *
+	 * @param directory the directory
+	 * @return the words in the order they appear
+	 * @throws IOException
+	 */
+	private static List<String> read(Path directory) throws IOException {
+		ArrayList<String> words = new ArrayList<String>();
+		List<Path> files;
+		try(Stream<Path> walk = Files.walk(directory)) {
+			files = walk.filter(Files::isRegularFile).filter(InvertedIndexHelper::isTextFile).collect(Collectors.toList());
+		}
+		for(Path file : files) {
+			TextTokenizer tokens = TextTokenizer.open(file);
+			String word;
+			while((word = tokens.next()) != null) {
+				words.add(word);
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * returns the bytes allocated by the current thread so far, or -1 if the
+	 * virtual machine cannot tell
+	 */
+	private static long allocated() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * stems every word, with or without the cache, and reports the cost per word
+	 */
+	private static void measure(String name, List<String> words, boolean cached, int rounds) {
+		Stemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		long check = 0;
+		for(int round = -1; round < rounds; round++) {
+			long bytes = allocated();
+			long start = System.nanoTime();
+			for(String word : words) {
+				String stem = cached ? StemCache.stem(word) : stemmer.stem(word).toString();
+				check += stem.length();
+			}
+			long elapsed = System.nanoTime() - start;
+			bytes = allocated() - bytes;
+			if(round == rounds - 1) {
+				System.out.printf("%-10s %8.1f ns/word %8.1f bytes/word (%d)%n", name, (double) elapsed / words.size(),
+						(double) bytes / words.size(), check);
+			}
+		}
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args an optional directory of text files, and the number of rounds, default 3
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		List<String> words = args.length > 0 ? read(Paths.get(args[0])) : generate(5000000);
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		System.out.printf("%d words%n", words.size());
+		measure("stemmer", words, false, rounds);
+		measure("StemCache", words, true, rounds);
+		System.out.println(StemCache.statistics());
+	}
+}
@@ -0,0 +1,109 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Remembers the stems of recently seen words. Words in natural language text
+ * repeat heavily, so most words are stemmed once per thread instead of once per
+ * occurrence, and the stem string is shared rather than built again.
+ *
+ * <p>Stemmers are not thread-safe, so each thread keeps its own stemmer and
+ * its own bounded map of the words it used least recently, and no lock is
+ * taken. Hits and misses are counted across all threads.</p>
+ */
+public class StemCache {
+	/** The default number of words each thread remembers. */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	private static final ThreadLocal<StemCache> LOCAL = ThreadLocal.withInitial(() -> new StemCache(DEFAULT_CAPACITY));
+	private static final LongAdder HITS = new LongAdder();
+	private static final LongAdder MISSES = new LongAdder();
+
+	private final Stemmer stemmer;
+	private final LinkedHashMap<String, String> stems;
+
+	/**
+	 * Creates a cache for one thread.
+	 *
+	 * @param capacity the most words to remember
+	 */
+	public StemCache(int capacity) {
+		this.stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		this.stems = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the English stem of a word, using the cache of the current thread.
+	 *
+	 * @param word the cleaned word
+	 * @return the stem
+	 */
+	public static String stem(String word) {
+		return LOCAL.get().lookup(word);
+	}
+
+	/**
+	 * Returns the stem of a word, stemming it only if it is not remembered.
+	 *
+	 * @param word the cleaned word
+	 * @return the stem
+	 */
+	public String lookup(String word) {
+		String stem = stems.get(word);
+		if(stem != null) {
+			HITS.increment();
+			return stem;
+		}
+		MISSES.increment();
+		stem = stemmer.stem(word).toString();
+		stems.put(word, stem);
+		return stem;
+	}
+
+	/**
+	 * Returns the number of words found in a cache, over all threads.
+	 *
+	 * @return number of hits
+	 */
+	public static long hits() {
+		return HITS.sum();
+	}
+
+	/**
+	 * Returns the number of words that had to be stemmed, over all threads.
+	 *
+	 * @return number of misses
+	 */
+	public static long misses() {
+		return MISSES.sum();
+	}
+
+	/**
+	 * Returns the share of words found in a cache.
+	 *
+	 * @return the hit rate from 0 to 1
+	 */
+	public static double hitRate() {
+		long hits = hits();
+		long total = hits + misses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Returns the hit and miss counts of all threads.
+	 *
+	 * @return a summary of the counts
+	 */
+	public static String statistics() {
+		return String.format("Stem cache: %d hits, %d misses, %.1f%% hit rate", hits(), misses(), 100 * hitRate());
+	}
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the time and the bytes allocated per page of fetching large pages
+ * from a {@link LocalHttpServer} and splitting them into words and links with
+ * {@link HTMLFetcher}, {@link HTMLCleaner} and {@link LinkParser}, as the
+ * crawler used to, against streaming them through {@link HttpStream} into
+ * {@link HTMLTokenizer}, which also gets them gzipped. Checks both give the
+ * same words and links; run it with -Dfile.encoding=UTF-8, since
+ * {@link HttpsFetcher} decodes pages in the default charset.
+ */
+public class StreamingFetchBenchmark {
+
+	/**
+	 * the words and links of a page
+	 */
+	private static class Page {
+		private final List<String> words;
+		private final List<URL> links;
+
+		private Page(List<String> words, List<URL> links) {
+			this.words = words;
+			this.links = links;
+		}
+	}
+
+	/**
+	 * a way of fetching a page
+	 */
+	private interface Fetch {
+		Page fetch(URL url) throws IOException;
+	}
+
+	/**
+	 * fetches whole and cleans as the crawler used to
+	 */
+	private static Page legacy(URL url) throws IOException {
+		String html = HTMLFetcher.fetchHTML(url, 0);
+		return new Page(Arrays.asList(TextParser.parse(HTMLCleaner.stripHTML(html))), LinkParser.listLinks(url, html));
+	}
+
+	/**
+	 * fetches and tokenizes as the page arrives
+	 */
+	private static Page streamed(URL url) throws IOException {
+		ArrayList<String> words = new ArrayList<String>();
+		ArrayList<URL> links = new ArrayList<URL>();
+		try(HttpStream response = HttpStream.open(url, 0)) {
+			new HTMLTokenizer(url, words::add, links::add).tokenize(response.getReader());
+		}
+		return new Page(words, links);
+	}
+
+	/**
+	 * fetches every page a few times on this thread and reports the best time
+	 * and the bytes allocated per page
+	 * @return the pages of the last round
+	 */
+	private static Page[] measure(String name, Fetch fetch, LocalHttpServer server, int pages, int rounds)
+			throws IOException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Page[] fetched = new Page[pages];
+		long best = Long.MAX_VALUE;
+		long allocated = 0;
+		for(int round = -1; round < rounds; round++) {
+			long bytes = allocated(threads);
+			long start = System.nanoTime();
+			for(int page = 0; page < pages; page++) {
+				fetched[page] = fetch.fetch(server.url(page));
+			}
+			long elapsed = System.nanoTime() - start;
+			if(round >= 0) {
+				best = Math.min(best, elapsed);
+				allocated = allocated(threads) - bytes;
+			}
+		}
+		System.out.printf("%-9s %8.1f pages/s %10.1f MB allocated per page%n", name, pages / (best / 1e9),
+				allocated / 1e6 / pages);
+		return fetched;
+	}
+
+	/**
+	 * returns the bytes this thread has allocated, or 0 if the JVM does not count them
+	 */
+	private static long allocated(ThreadMXBean threads) {
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args the number of pages, default 20, the paragraphs each page is
+	 * padded with, default 5000, and the number of rounds, default 3
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int paragraphs = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		try(LocalHttpServer server = new LocalHttpServer(1, 10, 0, paragraphs, false)) {
+			System.out.printf("%d pages of %.1f MB%n", pages, server.html(0).length() / 1e6);
+			Page[] legacy = measure("legacy", StreamingFetchBenchmark::legacy, server, pages, rounds);
+			Page[] streamed = measure("streamed", StreamingFetchBenchmark::streamed, server, pages, rounds);
+			int differ = 0;
+			for(int page = 0; page < pages; page++) {
+				if(!legacy[page].words.equals(streamed[page].words) || !legacy[page].links.toString().equals(streamed[page].links.toString())) {
+					differ++;
+				}
+			}
+			System.out.println("pages with differing words or links: " + differ);
+		}
+	}
+}
@@ -0,0 +1,453 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe inverted index that replaces the single lock of
+ * {@link ThreadSafeInvertedIndex} with a set of striped locks. Words live in a
+ * {@link ConcurrentSkipListMap}, so looking up and walking words never locks,
+ * and the postings of each word are guarded by the lock of the stripe its hash
+ * falls in. A merge only blocks searches for words in the stripe it is
+ * currently writing, one word at a time. The stripe locks are fair, so a
+ * steady stream of searches cannot starve a merge.
+ *
+ * <p>Merges share a writer lock, so several run at once, while removing or
+ * updating locations holds it alone. A location is then never added while it
+ * is being removed, which could leave postings without a word count, and two
+ * updates of one location cannot both add its count.</p>
+ */
+public class StripedInvertedIndex extends ThreadSafeInvertedIndex {
+	/** The default number of lock stripes. */
+	public static final int DEFAULT_STRIPES = 64;
+
+	private final ConcurrentSkipListMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	private final ConcurrentHashMap<String, Integer> totalWords;
+	private final ReentrantReadWriteLock[] locks;
+	private final ReentrantReadWriteLock writers;
+
+	/**
+	 * Creates a striped index with the default number of stripes.
+	 */
+	public StripedInvertedIndex() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Creates a striped index.
+	 * @param stripes the number of lock stripes
+	 */
+	public StripedInvertedIndex(int stripes) {
+		super();
+		index = new ConcurrentSkipListMap<String, TreeMap<String, TreeSet<Integer>>>();
+		totalWords = new ConcurrentHashMap<String, Integer>();
+		locks = new ReentrantReadWriteLock[stripes];
+		for(int i = 0; i < stripes; i++) {
+			locks[i] = new ReentrantReadWriteLock(true);
+		}
+		writers = new ReentrantReadWriteLock(true);
+	}
+
+	/**
+	 * returns the lock guarding the postings of a word
+	 * @param word the word in document
+	 * @return the lock of the stripe the word falls in
+	 */
+	private ReentrantReadWriteLock lockFor(String word) {
+		return locks[(word.hashCode() & 0x7fffffff) % locks.length];
+	}
+
+	@Override
+	public void addWord(String word, String document, int position) {
+		ReentrantReadWriteLock lock = lockFor(word);
+		writers.readLock().lock();
+		lock.writeLock().lock();
+		try {
+			TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+			if(documents == null) {
+				documents = new TreeMap<String, TreeSet<Integer>>();
+				index.put(word, documents);
+			}
+			documents.putIfAbsent(document, new TreeSet<Integer>());
+			if(documents.get(document).add(position)) {
+				totalWords.merge(document, 1, Integer::sum);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+			writers.readLock().unlock();
+		}
+		invalidatePrefixes(word);
+		advanceGeneration();
+	}
+
+	/**
+	 * Adds all words and locations from local. Word counts are added first so a
+	 * search never finds a location before its count, then every word is merged
+	 * under the lock of its own stripe. Other merges may run at the same time,
+	 * but not a removal.
+	 */
+	@Override
+	public void addAll(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
+		writers.readLock().lock();
+		try {
+			for(String location : local.getLocations()) {
+				totalWords.merge(location, local.getTotal(location), Integer::sum);
+			}
+			for(String word : local.getWords()) {
+				ReentrantReadWriteLock lock = lockFor(word);
+				lock.writeLock().lock();
+				try {
+					TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+					if(documents == null) {
+						documents = new TreeMap<String, TreeSet<Integer>>();
+						index.put(word, documents);
+					}
+					for(String location : local.getLocations(word)) {
+						TreeSet<Integer> positions = documents.get(location);
+						if(positions == null) {
+							documents.put(location, new TreeSet<Integer>(local.getPositions(word, location)));
+						} else {
+							positions.addAll(local.getPositions(word, location));
+						}
+					}
+				}
+				finally {
+					lock.writeLock().unlock();
+				}
+				invalidatePrefixes(word);
+			}
+		}
+		finally {
+			writers.readLock().unlock();
+		}
+		advanceGeneration();
+	}
+
+	/**
+	 * Removes the locations from every word under the lock of its own stripe,
+	 * then removes their word counts, so a search never finds a location
+	 * without its count. No merge runs until the locations are removed.
+	 */
+	@Override
+	public void removeAll(Collection<String> locations) {
+		HashSet<String> removed = new HashSet<String>(locations);
+		writers.writeLock().lock();
+		try {
+			for(String word : index.keySet()) {
+				ReentrantReadWriteLock lock = lockFor(word);
+				boolean changed;
+				lock.writeLock().lock();
+				try {
+					TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+					changed = documents != null && documents.keySet().removeAll(removed);
+					if(changed && documents.isEmpty()) {
+						index.remove(word);
+					}
+				}
+				finally {
+					lock.writeLock().unlock();
+				}
+				if(changed) {
+					invalidatePrefixes(word);
+				}
+			}
+			totalWords.keySet().removeAll(removed);
+		}
+		finally {
+			writers.writeLock().unlock();
+		}
+		advanceGeneration();
+	}
+
+	/**
+	 * Removes and adds the locations while holding the writer lock alone, so no
+	 * other merge or update of the locations runs in between.
+	 */
+	@Override
+	public void update(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
+		writers.writeLock().lock();
+		try {
+			removeAll(local.getLocations());
+			addAll(local);
+		}
+		finally {
+			writers.writeLock().unlock();
+		}
+	}
+
+	@Override
+	protected ArrayList<SearchResult> exactMatches(TreeSet<String> queryWords) {
+		ArrayList<SearchResult> finalResult = new ArrayList<SearchResult>();
+		HashMap<String, SearchResult> searchResults = new HashMap<>();
+		for(String word : queryWords) {
+			searchStorer(word, searchResults, finalResult);
+		}
+		return finalResult;
+	}
+
+	/**
+	 * Holds the writer lock shared while a cached union is looked up or built
+	 * and applied, so no removal runs in between and drops the word count of a
+	 * location the union still holds.
+	 */
+	@Override
+	protected ArrayList<SearchResult> partialMatches(TreeSet<String> queryWords) {
+		ArrayList<SearchResult> finalResult = new ArrayList<SearchResult>();
+		HashMap<String, SearchResult> searchResults = new HashMap<>();
+		PrefixCache cache = getPrefixCache();
+		for(String word : queryWords) {
+			if(cache != null) {
+				writers.readLock().lock();
+				try {
+					PrefixCache.Union union = cache.get(word);
+					if(union == null && cache.admit(word)) {
+						long version = cache.version();
+						union = new PrefixCache.Union(prefixCounts(word));
+						cache.put(word, union, version);
+					}
+					if(union != null) {
+						union.addTo(searchResults, finalResult, totalWords);
+						continue;
+					}
+				}
+				finally {
+					writers.readLock().unlock();
+				}
+			}
+			for(String words : index.tailMap(word).keySet()) {
+				if(words.startsWith(word)) {
+					searchStorer(words, searchResults, finalResult);
+				} else {
+					break;
+				}
+			}
+		}
+		return finalResult;
+	}
+
+	/**
+	 * sums the counts of every word starting with a prefix by location, holding
+	 * the lock of one word's stripe at a time. a word removed after the walk
+	 * found it is skipped.
+	 * @param prefix the prefix
+	 * @return the count of each location, in the order they were found
+	 */
+	private LinkedHashMap<String, Integer> prefixCounts(String prefix) {
+		LinkedHashMap<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		for(String word : index.tailMap(prefix).keySet()) {
+			if(!word.startsWith(prefix)) {
+				break;
+			}
+			ReentrantReadWriteLock lock = lockFor(word);
+			lock.readLock().lock();
+			try {
+				TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+				if(documents == null) {
+					continue;
+				}
+				for(Map.Entry<String, TreeSet<Integer>> entry : documents.entrySet()) {
+					counts.merge(entry.getKey(), entry.getValue().size(), Integer::sum);
+				}
+			}
+			finally {
+				lock.readLock().unlock();
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * checks if location exists and updates count and score, holding only the
+	 * lock of the word's stripe
+	 * @param queryWord the words for the searchresult
+	 * @param searchResult map of location and searchResult
+	 * @param finalResults the search results in the order they were found
+	 */
+	private void searchStorer(String queryWord, HashMap<String, SearchResult> searchResult, ArrayList<SearchResult> finalResults) {
+		ReentrantReadWriteLock lock = lockFor(queryWord);
+		lock.readLock().lock();
+		try {
+			TreeMap<String, TreeSet<Integer>> documents = index.get(queryWord);
+			if(documents == null) {
+				return;
+			}
+			for(Map.Entry<String, TreeSet<Integer>> entry : documents.entrySet()) {
+				int count = entry.getValue().size();
+				SearchResult result = searchResult.get(entry.getKey());
+				if(result != null) {
+					result.updateCount(count);
+				} else {
+					result = new SearchResult(entry.getKey(), count, totalWords.get(entry.getKey()));
+					searchResult.put(entry.getKey(), result);
+					finalResults.add(result);
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void output(Path outputfilepath, boolean pretty) throws IOException {
+		asTree().output(outputfilepath, pretty);
+	}
+
+	@Override
+	public void countWords(Path file) throws IOException {
+		Files.createFile(file);
+		TreeJSONWriter.asObject(new TreeMap<String, Integer>(totalWords), file);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return index.containsKey(word);
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return size(word, location) > 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		return getPositions(word, location).contains(position);
+	}
+
+	@Override
+	public int size() {
+		return index.size();
+	}
+
+	@Override
+	public int size(String word) {
+		ReentrantReadWriteLock lock = lockFor(word);
+		lock.readLock().lock();
+		try {
+			TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+			return documents == null ? 0 : documents.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int size(String word, String location) {
+		ReentrantReadWriteLock lock = lockFor(word);
+		lock.readLock().lock();
+		try {
+			TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+			if(documents == null || !documents.containsKey(location)) {
+				return 0;
+			}
+			return documents.get(location).size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public NavigableSet<String> getWords() {
+		return Collections.unmodifiableNavigableSet(index.keySet());
+	}
+
+	@Override
+	public Set<String> getLocations() {
+		return Collections.unmodifiableSet(new TreeSet<String>(totalWords.keySet()));
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		ReentrantReadWriteLock lock = lockFor(word);
+		lock.readLock().lock();
+		try {
+			TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+			if(documents == null) {
+				return Collections.emptySet();
+			}
+			return Collections.unmodifiableSet(new TreeSet<String>(documents.keySet()));
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public SortedSet<Integer> getPositions(String word, String location) {
+		ReentrantReadWriteLock lock = lockFor(word);
+		lock.readLock().lock();
+		try {
+			TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+			if(documents == null || !documents.containsKey(location)) {
+				return Collections.emptySortedSet();
+			}
+			return Collections.unmodifiableSortedSet(new TreeSet<Integer>(documents.get(location)));
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int getTotal(String location) {
+		return totalWords.getOrDefault(location, 0);
+	}
+
+	/**
+	 * Copies the words under the writer lock shared, so no location is removed
+	 * while they are copied and every copied location keeps its word count.
+	 */
+	@Override
+	protected InvertedIndex asTree() {
+		InvertedIndex tree = new InvertedIndex();
+		writers.readLock().lock();
+		try {
+			for(String word : index.keySet()) {
+				ReentrantReadWriteLock lock = lockFor(word);
+				lock.readLock().lock();
+				try {
+					TreeMap<String, TreeSet<Integer>> documents = index.get(word);
+					if(documents == null) {
+						continue;
+					}
+					for(Map.Entry<String, TreeSet<Integer>> entry : documents.entrySet()) {
+						for(int position : entry.getValue()) {
+							tree.addWord(word, entry.getKey(), position);
+						}
+					}
+				}
+				finally {
+					lock.readLock().unlock();
+				}
+			}
+		}
+		finally {
+			writers.readLock().unlock();
+		}
+		return tree;
+	}
+
+	@Override
+	public String toString() {
+		return asTree().toString();
+	}
+}
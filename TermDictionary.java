@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable term dictionary for a frozen index. Words are kept in one
+ * sorted array, so all words starting with a prefix form a contiguous id range
+ * found with two binary searches, and partial searches enumerate exactly the
+ * matching words without walking past them. The number of locations of each
+ * word is stored along with a running sum, so the number of postings under any
+ * prefix is known before a single posting list is read.
+ */
+public class TermDictionary {
+	private final String[] terms;
+	private final int[] frequencies;
+	private final long[] cumulative;
+
+	/**
+	 * Creates a dictionary.
+	 *
+	 * @param terms the words in sorted order
+	 * @param frequencies the number of locations of each word
+	 */
+	public TermDictionary(String[] terms, int[] frequencies) {
+		this.terms = terms;
+		this.frequencies = frequencies;
+		this.cumulative = new long[terms.length + 1];
+		for(int i = 0; i < terms.length; i++) {
+			cumulative[i + 1] = cumulative[i] + frequencies[i];
+		}
+	}
+
+	/**
+	 * Returns the number of words.
+	 *
+	 * @return number of words
+	 */
+	public int size() {
+		return terms.length;
+	}
+
+	/**
+	 * Returns the word with an id.
+	 *
+	 * @param id the id of the word
+	 * @return the word
+	 */
+	public String term(int id) {
+		return terms[id];
+	}
+
+	/**
+	 * Returns the words in sorted order.
+	 *
+	 * @return an unmodifiable list of the words
+	 */
+	public List<String> terms() {
+		return Collections.unmodifiableList(Arrays.asList(terms));
+	}
+
+	/**
+	 * Returns the id of a word.
+	 *
+	 * @param term the word
+	 * @return the id, or -1 if the word is not stored
+	 */
+	public int id(String term) {
+		int id = Arrays.binarySearch(terms, term);
+		return id < 0 ? -1 : id;
+	}
+
+	/**
+	 * Returns the id of the first word starting with a prefix.
+	 *
+	 * @param prefix the prefix
+	 * @return the first id of the prefix range
+	 */
+	public int first(String prefix) {
+		int id = Arrays.binarySearch(terms, prefix);
+		return id < 0 ? -(id + 1) : id;
+	}
+
+	/**
+	 * Returns the id after the last word starting with a prefix. Words starting
+	 * with the prefix are contiguous, so this is found by binary search too.
+	 *
+	 * @param prefix the prefix
+	 * @return the id one past the end of the prefix range
+	 */
+	public int end(String prefix) {
+		int low = first(prefix);
+		int high = terms.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(terms[middle].startsWith(prefix)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the number of locations of a word.
+	 *
+	 * @param id the id of the word
+	 * @return the document frequency
+	 */
+	public int frequency(int id) {
+		return frequencies[id];
+	}
+
+	/**
+	 * Returns the number of postings of all words starting with a prefix.
+	 *
+	 * @param prefix the prefix
+	 * @return the summed document frequency
+	 */
+	public long prefixFrequency(String prefix) {
+		return cumulative[end(prefix)] - cumulative[first(prefix)];
+	}
+}
@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Splits UTF-8 text into the same cleaned, lowercase words as running
+ * {@link TextParser#parse(String)} on each of its lines, without building a
+ * string per line. Lines that are plain ASCII are cleaned, lowercased and split
+ * in one pass over the bytes into a reused char buffer, so the only string made
+ * is the word itself. Any line holding other characters is decoded and handed
+ * to {@link TextParser#parse(String)}, which knows how to normalize it.
+ *
+ * <p>Large files are memory-mapped rather than read onto the heap.</p>
+ */
+public class TextTokenizer {
+	/** Files at least this many bytes are memory-mapped instead of read. */
+	public static final int MAP_THRESHOLD = 1 << 16;
+
+	private static final String[] NONE = new String[0];
+
+	private final ByteBuffer buffer;
+	private final int limit;
+	private final boolean ascii;
+	private final CharsetDecoder decoder;
+	private int position;
+	private int lineEnd;
+	private char[] chars;
+	private String[] pending;
+	private int next;
+
+	/**
+	 * Creates a tokenizer over the remaining bytes of a buffer.
+	 *
+	 * @param buffer the UTF-8 text
+	 */
+	public TextTokenizer(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.limit = buffer.limit();
+		// lowercasing ASCII by hand is only the same as toLowerCase when the
+		// default locale has no special rules for it, such as the Turkish dotless i
+		this.ascii = "I".toLowerCase().equals("i");
+		this.decoder = StandardCharsets.UTF_8.newDecoder();
+		this.position = buffer.position();
+		this.lineEnd = position;
+		this.chars = new char[64];
+		this.pending = NONE;
+		this.next = 0;
+	}
+
+	/**
+	 * Creates a tokenizer over a file, memory-mapping it if it is large.
+	 *
+	 * @param path the file to read
+	 * @return the tokenizer
+	 * @throws IOException
+	 */
+	public static TextTokenizer open(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size < MAP_THRESHOLD) {
+				return new TextTokenizer(ByteBuffer.wrap(Files.readAllBytes(path)));
+			}
+			return new TextTokenizer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+
+	/**
+	 * Returns the next word.
+	 *
+	 * @return the word, or null once the text is used up
+	 * @throws IOException if a line is not valid UTF-8
+	 */
+	public String next() throws IOException {
+		while(true) {
+			if(next < pending.length) {
+				return pending[next++];
+			}
+			if(position < lineEnd) {
+				String word = nextAscii();
+				if(word != null) {
+					return word;
+				}
+			}
+			while(position < limit && isLineBreak(buffer.get(position))) {
+				position++;
+			}
+			if(position >= limit) {
+				return null;
+			}
+			int end = position;
+			boolean plain = ascii;
+			while(end < limit) {
+				byte b = buffer.get(end);
+				if(isLineBreak(b)) {
+					break;
+				}
+				if(b < 0) {
+					plain = false;
+				}
+				end++;
+			}
+			if(plain) {
+				lineEnd = end;
+			} else {
+				ByteBuffer line = buffer.duplicate();
+				line.limit(end).position(position);
+				pending = TextParser.parse(decoder.decode(line).toString());
+				next = 0;
+				position = end;
+				lineEnd = end;
+			}
+		}
+	}
+
+	/**
+	 * cleans, lowercases and returns the next word of the current ASCII line
+	 * @return the word, or null if the rest of the line holds none
+	 */
+	private String nextAscii() {
+		int length = 0;
+		while(position < lineEnd) {
+			byte b = buffer.get(position++);
+			if(b >= 'a' && b <= 'z') {
+				if(length == chars.length) {
+					chars = Arrays.copyOf(chars, length * 2);
+				}
+				chars[length++] = (char) b;
+			} else if(b >= 'A' && b <= 'Z') {
+				if(length == chars.length) {
+					chars = Arrays.copyOf(chars, length * 2);
+				}
+				chars[length++] = (char) (b + ('a' - 'A'));
+			} else if(b == ' ' || (b >= '\t' && b <= '\r')) {
+				if(length > 0) {
+					return new String(chars, 0, length);
+				}
+			}
+		}
+		return length > 0 ? new String(chars, 0, length) : null;
+	}
+
+	/**
+	 * returns whether a byte ends a line the way {@link java.io.BufferedReader#readLine()} does
+	 */
+	private static boolean isLineBreak(byte b) {
+		return b == '\n' || b == '\r';
+	}
+}
@@ -2,6 +2,11 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeSet;
 
 public class ThreadSafeInvertedIndex extends InvertedIndex {
@@ -27,10 +32,10 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 	
 	@Override
-	public ArrayList<SearchResult> exactSearch(TreeSet<String> queryWords) {
+	protected ArrayList<SearchResult> exactMatches(TreeSet<String> queryWords) {
 		lock.lockReadOnly();
 		try {
-			return super.exactSearch(queryWords);
+			return super.exactMatches(queryWords);
 		}
 		finally {
 			lock.unlockReadOnly();
@@ -38,10 +43,10 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 	
 	@Override
-	public ArrayList<SearchResult> partialSearch(TreeSet<String> queryWords) {
+	protected ArrayList<SearchResult> partialMatches(TreeSet<String> queryWords) {
 		lock.lockReadOnly();
 		try {
-			return super.partialSearch(queryWords);
+			return super.partialMatches(queryWords);
 		}
 		finally {
 			lock.unlockReadOnly();
@@ -60,10 +65,54 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 	
 	@Override
-	public void output(Path outputfilepath) throws IOException {
+	public void removeAll(Collection<String> locations) {
+		lock.lockReadWrite();
+		try {
+			super.removeAll(locations);
+		}
+		finally {
+			lock.unlockReadWrite();
+		}
+	}
+	
+	/**
+	 * Removes and adds the locations under one write lock, so no search finds
+	 * them missing and two updates of one location cannot both add it.
+	 * Subclasses with storage of their own must override this.
+	 */
+	@Override
+	public void update(InvertedIndex other) {
+		InvertedIndex local = other.asTree();
+		lock.lockReadWrite();
+		try {
+			super.removeAll(local.getLocations());
+			super.addAll(local);
+		}
+		finally {
+			lock.unlockReadWrite();
+		}
+	}
+	
+	/**
+	 * Freezes the index under the read lock, so the segment is a snapshot that
+	 * can be read for as long as needed without holding the lock.
+	 */
+	@Override
+	public IndexSegment freeze() {
 		lock.lockReadOnly();
 		try {
-			super.output(outputfilepath);
+			return super.freeze();
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+	}
+	
+	@Override
+	public void output(Path outputfilepath, boolean pretty) throws IOException {
+		lock.lockReadOnly();
+		try {
+			super.output(outputfilepath, pretty);
 		}
 		finally {
 			lock.unlockReadOnly();
@@ -147,6 +196,61 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	@Override
+	public NavigableSet<String> getWords() {
+		lock.lockReadOnly();
+		try {
+			return Collections.unmodifiableNavigableSet(new TreeSet<String>(super.getWords()));
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+	}
+	
+	@Override
+	public Set<String> getLocations() {
+		lock.lockReadOnly();
+		try {
+			return Collections.unmodifiableSet(new TreeSet<String>(super.getLocations()));
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+	}
+	
+	@Override
+	public Set<String> getLocations(String word) {
+		lock.lockReadOnly();
+		try {
+			return Collections.unmodifiableSet(new TreeSet<String>(super.getLocations(word)));
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+	}
+	
+	@Override
+	public SortedSet<Integer> getPositions(String word, String location) {
+		lock.lockReadOnly();
+		try {
+			return Collections.unmodifiableSortedSet(new TreeSet<Integer>(super.getPositions(word, location)));
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+	}
+	
+	@Override
+	public int getTotal(String location) {
+		lock.lockReadOnly();
+		try {
+			return super.getTotal(location);
+		}
+		finally {
+			lock.unlockReadOnly();
+		}
+	}
+	
 	@Override
 	public String toString() {
 		lock.lockReadOnly();
@@ -4,55 +4,104 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class ThreadSafeInvertedIndexHelper {
-	
-	public static void readDirectory(Path path, ThreadSafeInvertedIndex index, WorkQueue queue) throws IOException {
- 		readDirectoryHelper(path, index, queue);
- 		queue.finish();
+
+	/**
+	 * Reads every text file under a directory into the index. Each subdirectory
+	 * is listed by its own task on the queue, so files are found in parallel and
+	 * workers stay busy however deep or uneven the tree is, and the queue is only
+	 * waited on once, after the whole tree is read. Each worker stages the files
+	 * it reads in a {@link BulkAdder}, so the index is locked once per batch.
+	 * @param path the directory or file to read
+	 * @param index the InvertedIndex to add to
+	 * @param queue the WorkQueue
+	 * @return the number of files and bytes read and the time taken
+	 * @throws IOException
+	 */
+	public static IngestStats readDirectory(Path path, ThreadSafeInvertedIndex index, WorkQueue queue) throws IOException {
+		IngestStats stats = new IngestStats();
+		BulkAdder adder = new BulkAdder(index);
+		try {
+			readDirectoryHelper(path, adder, queue, stats);
+		}
+		finally {
+			queue.finish();
+			adder.flushAll();
+			stats.finish();
+		}
+		return stats;
  	}
+
 	/**
- 	 * Reads through a directory recursively and a text file and then calls the runnable
+ 	 * Lists a directory, adding a task for each text file and subdirectory in it
  	 * @param path the file used
- 	 * @param index the InvertedIndex to add to
+ 	 * @param adder the adder staging words for the InvertedIndex
  	 * @param queue the WorkQueue
+ 	 * @param stats the counts of files and bytes read
  	 * @throws IOException
  	 */
-	public static void readDirectoryHelper(Path path, ThreadSafeInvertedIndex index, WorkQueue queue) throws IOException{
+	public static void readDirectoryHelper(Path path, BulkAdder adder, WorkQueue queue, IngestStats stats) throws IOException{
 		if(Files.isDirectory(path)) {
 			try (DirectoryStream<Path> listing = Files.newDirectoryStream(path)) {
 				for (Path file : listing) {
 					if (Files.isDirectory(file)) {
-						readDirectory(file, index, queue);
-					} 
+						queue.execute(new DirectoryMinion(file, adder, queue, stats));
+					}
 					else if(InvertedIndexHelper.isTextFile(file)) {
-						queue.execute(new FileMinion(file, index));
+						queue.execute(new FileMinion(file, adder, stats));
 					}
 				}
-			} 
+			}
 		}
 		else {
-			queue.execute(new FileMinion(path, index));
+			queue.execute(new FileMinion(path, adder, stats));
+		}
+	}
+
+	private static class DirectoryMinion implements Runnable {
+		private Path directory;
+		private BulkAdder adder;
+		private WorkQueue queue;
+		private IngestStats stats;
+
+		public DirectoryMinion(Path directory, BulkAdder adder, WorkQueue queue, IngestStats stats) {
+			this.directory = directory;
+			this.adder = adder;
+			this.queue = queue;
+			this.stats = stats;
+		}
+
+		@Override
+		public void run() {
+			try {
+				readDirectoryHelper(directory, adder, queue, stats);
+			} catch(IOException e) {
+				System.out.println("Error reading directory " + directory);
+			}
 		}
 	}
-	
+
 	private static class FileMinion implements Runnable {
 		private Path files;
-		private ThreadSafeInvertedIndex index;
-		
-		public FileMinion(Path files, ThreadSafeInvertedIndex index) {
+		private BulkAdder adder;
+		private IngestStats stats;
+
+		public FileMinion(Path files, BulkAdder adder, IngestStats stats) {
 			this.files = files;
-			this.index = index;
+			this.adder = adder;
+			this.stats = stats;
 		}
-		
+
 		@Override
 		public void run() {
 			try {
 				InvertedIndex local = new InvertedIndex();
 				InvertedIndexHelper.readFile(files, local);
-				index.addAll(local);	
+				adder.add(local);
+				stats.add(Files.size(files));
 			} catch(IOException e) {
 				System.out.println("Error adding words to the index");
 			}
 		}
 	}
-	
+
 }
@@ -6,23 +6,34 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 public class ThreadSafeSearchResultHelper implements SearchResultHelperInterface {
 	private final TreeMap<String, ArrayList<SearchResult>> search;
 	private final WorkQueue queue;
-	private final ThreadSafeInvertedIndex index;
+	private final InvertedIndex index;
+	private final int limit;
 	
 	/**
 	 * multi-threaded builder of search results
 	 * @param queue the WorkQueue used to multi-thread
-	 * @param index the InvertedIndex to search through
+	 * @param index the InvertedIndex to search through, safe for concurrent searches
 	 */
-	public ThreadSafeSearchResultHelper(WorkQueue queue, ThreadSafeInvertedIndex index) {
+	public ThreadSafeSearchResultHelper(WorkQueue queue, InvertedIndex index) {
+		this(queue, index, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * multi-threaded builder of search results that keeps only the best
+	 * results of each query
+	 * @param queue the WorkQueue used to multi-thread
+	 * @param index the InvertedIndex to search through, safe for concurrent searches
+	 * @param limit the most results to keep for each query
+	 */
+	public ThreadSafeSearchResultHelper(WorkQueue queue, InvertedIndex index, int limit) {
 		search = new TreeMap<String, ArrayList<SearchResult>>();
 		this.queue = queue;
 		this.index = index;
+		this.limit = limit;
 	}
 	
 	/**
@@ -52,11 +63,10 @@ public class ThreadSafeSearchResultHelper implements SearchResultHelperInterface
 	 * @throws IOException
 	 */
 	public void searchMatches(String line, boolean exact) {
-		Stemmer cleaner = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
 		String[] stemmedwords = TextParser.parse(line);
 		TreeSet<String> queryWords = new TreeSet<String>();
 		for(String stems : stemmedwords) {
-			queryWords.add(cleaner.stem(stems).toString());
+			queryWords.add(StemCache.stem(stems));
 		}
 		String queryLine = String.join(" ", queryWords);
 		synchronized(this) {
@@ -66,9 +76,9 @@ public class ThreadSafeSearchResultHelper implements SearchResultHelperInterface
 		}
 		ArrayList<SearchResult> current;
 		if(exact) {
-			current = index.exactSearch(queryWords);
+			current = index.exactSearch(queryWords, 0, limit);
 		} else {
-			current = index.partialSearch(queryWords);
+			current = index.partialSearch(queryWords, 0, limit);
 		}
 		synchronized(this) {
 			search.put(queryLine, current);
@@ -82,7 +92,7 @@ public class ThreadSafeSearchResultHelper implements SearchResultHelperInterface
 	 */
 	public synchronized void outputSearchResults(Path outputfilepath) throws IOException {
 		Files.createFile(outputfilepath);
-		TreeJSONWriter.asQueryTripleNestedObject(search, outputfilepath);
+		SearchResultWriter.write(search, outputfilepath);
 	}
 	
 	private class SearchMinion implements Runnable {
@@ -0,0 +1,121 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Measures single-thread tokenizing throughput in MB/s of reading a text file
+ * line by line through {@link TextParser#parse(String)}, as indexing used to,
+ * against {@link TextTokenizer}, and checks both find the same words.
+ */
+public class TokenizerBenchmark {
+
+	private static final String[] WORDS = { "the", "Inverted", "index", "search", "ENGINE", "crawler's", "2019",
+			"query-time", "U.S.A.", "results;", "(partial)", "caf\u00e9", "na\u00efve", "\u00dcber", "stra\u00dfe",
+			"\u039f\u0394\u039f\u03a3", "\u00a0nbsp" };
+
+	/**
+	 * Writes a pseudo-random text file where most lines are plain ASCII.
+	 *
+	 * @param path the file to write
+	 * @param megabytes the size of the file
+	 * @throws IOException
+	 */
+	private static void generate(Path path, int megabytes) throws IOException {
+		Random random = new Random(212);
+		try(BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			long size = 0;
+			while(size < megabytes * 1000000L) {
+				StringBuilder line = new StringBuilder();
+				boolean plain = random.nextInt(10) > 0;
+				int length = 5 + random.nextInt(15);
+				for(int i = 0; i < length; i++) {
+					line.append(i == 0 ? "" : random.nextInt(20) == 0 ? "\t" : " ");
+					line.append(WORDS[random.nextInt(plain ? 11 : WORDS.length)]);
+				}
+				out.write(line.toString());
+				out.write(random.nextInt(4) == 0 ? "\r\n" : "\n");
+				size += line.length() + 1;
+			}
+		}
+	}
+
+	/**
+	 * reads the file the way indexing used to
+	 * @return the number of words and a hash of them
+	 */
+	private static long[] legacy(Path path) throws IOException {
+		long[] found = new long[2];
+		try(BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while((line = in.readLine()) != null) {
+				for(String word : TextParser.parse(line)) {
+					found[0]++;
+					found[1] = found[1] * 31 + word.hashCode();
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * reads the file with the streaming tokenizer
+	 * @return the number of words and a hash of them
+	 */
+	private static long[] streaming(Path path) throws IOException {
+		long[] found = new long[2];
+		TextTokenizer words = TextTokenizer.open(path);
+		String word;
+		while((word = words.next()) != null) {
+			found[0]++;
+			found[1] = found[1] * 31 + word.hashCode();
+		}
+		return found;
+	}
+
+	/**
+	 * times one way of reading the file, after warming it up
+	 */
+	private static long[] measure(String name, Path path, boolean stream, int rounds) throws IOException {
+		long[] found = null;
+		for(int i = 0; i < 2; i++) {
+			found = stream ? streaming(path) : legacy(path);
+		}
+		long start = System.nanoTime();
+		for(int i = 0; i < rounds; i++) {
+			found = stream ? streaming(path) : legacy(path);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-28s %8.1f MB/s %12d words%n", name, Files.size(path) * rounds / 1e6 / seconds, found[0]);
+		return found;
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args an optional text file to read instead of a generated one, and
+	 *        the number of rounds, default 5
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		Path path;
+		if(args.length > 0) {
+			path = Paths.get(args[0]);
+		} else {
+			path = Files.createTempFile("tokenizer", ".txt");
+			path.toFile().deleteOnExit();
+			generate(path, 50);
+		}
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		long[] expected = measure("BufferedReader + TextParser", path, false, rounds);
+		long[] actual = measure("TextTokenizer", path, true, rounds);
+		if(expected[0] != actual[0] || expected[1] != actual[1]) {
+			System.out.println("The tokenizers found different words");
+		}
+	}
+}
@@ -0,0 +1,130 @@
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Variable-byte coding of non-negative ints. Each byte holds seven bits of the
+ * value, lowest bits first, and the high bit marks that more bytes follow, so
+ * the small gaps between sorted ids and positions take one or two bytes.
+ */
+public class VByte {
+
+	/**
+	 * Writes a non-negative value using as few bytes as needed.
+	 *
+	 * @param value the value to write
+	 * @param out the stream to write to
+	 */
+	public static void write(int value, ByteArrayOutputStream out) {
+		while((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Writes a non-negative value using as few bytes as needed.
+	 *
+	 * @param value the value to write
+	 * @param out the writer to write to
+	 */
+	public static void write(int value, RegionBuffer.Writer out) {
+		while((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Writes a value that may be negative by zig-zag mapping it first, so
+	 * small negative values stay short.
+	 *
+	 * @param value the value to write
+	 * @param out the stream to write to
+	 */
+	public static void writeSigned(int value, ByteArrayOutputStream out) {
+		write((value << 1) ^ (value >> 31), out);
+	}
+
+	/**
+	 * Returns the number of bytes {@link #write(int, ByteArrayOutputStream)}
+	 * uses for a value.
+	 *
+	 * @param value the value
+	 * @return the encoded length in bytes
+	 */
+	public static int length(int value) {
+		int length = 1;
+		while((value & ~0x7F) != 0) {
+			value >>>= 7;
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * Reads variable-byte values from a buffer using absolute gets, so several
+	 * readers can share one buffer across threads.
+	 */
+	public static class Reader {
+		private final RegionBuffer buffer;
+		private long position;
+
+		/**
+		 * Starts reading at a position in the buffer.
+		 *
+		 * @param buffer the buffer to read
+		 * @param position the index of the first byte
+		 */
+		public Reader(RegionBuffer buffer, long position) {
+			this.buffer = buffer;
+			this.position = position;
+		}
+
+		/**
+		 * Reads the next non-negative value.
+		 *
+		 * @return the value
+		 */
+		public int read() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(position++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+			return value;
+		}
+
+		/**
+		 * Reads the next value written by
+		 * {@link VByte#writeSigned(int, ByteArrayOutputStream)}.
+		 *
+		 * @return the value
+		 */
+		public int readSigned() {
+			int value = read();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		/**
+		 * Skips over bytes without decoding them.
+		 *
+		 * @param bytes the number of bytes to skip
+		 */
+		public void skip(int bytes) {
+			position += bytes;
+		}
+
+		/**
+		 * Returns the position of the next byte to read.
+		 *
+		 * @return the position
+		 */
+		public long position() {
+			return position;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Makes executors that start a thread per task, for work that spends its time
+ * blocked on I/O such as fetching pages.
+ *
+ * <p>On Java 21 and later the threads are virtual threads, which cost a few
+ * hundred bytes each and do not hold a platform thread while blocked, so
+ * thousands can fetch at once. The method that makes them is looked up by
+ * reflection, so this compiles and runs on older versions too, where the
+ * threads are platform threads from a cached pool instead.</p>
+ */
+public class VirtualThreads {
+	private static final Method PER_TASK = lookup();
+
+	/**
+	 * Makes an executor that runs each task on a new virtual thread, or on a
+	 * cached pool of daemon threads if virtual threads are not available.
+	 * @return the executor
+	 */
+	public static ExecutorService newPerTaskExecutor() {
+		if(PER_TASK != null) {
+			try {
+				return (ExecutorService) PER_TASK.invoke(null);
+			} catch(ReflectiveOperationException e) {
+				System.out.println("Virtual threads unavailable, using platform threads");
+			}
+		}
+		return Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "VirtualThreads");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * tells if tasks run on virtual threads
+	 * @return true if virtual threads are available
+	 */
+	public static boolean available() {
+		return PER_TASK != null;
+	}
+
+	/**
+	 * looks up Executors.newVirtualThreadPerTaskExecutor and tries it once,
+	 * since it fails on versions where virtual threads are a preview
+	 * @return the method, or null if this version of Java cannot use it
+	 */
+	private static Method lookup() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			((ExecutorService) method.invoke(null)).shutdown();
+			return method;
+		} catch(ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
@@ -1,45 +1,131 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashSet;
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 public class WebCrawler {
+	/** The most words of a page streamed on the fetchers that are handed to a minion at once. */
+	public static final int BATCH = 4096;
+
 	private final ThreadSafeInvertedIndex index;
-	private HashSet<String> urls;
 	private final WorkQueue minions;
-	private int limit;
+	private final BulkAdder adder;
+	private final boolean bloom;
+	private final int perHost;
+	private final long delay;
+	private final AsyncFetcher fetcher;
+	private final Executor fetchers;
+	private CrawlFrontier frontier;
+	private HostScheduler scheduler;
 	
 	/**
-	 * Initializes index, minions, and urls
+	 * Initializes index and minions
 	 * @param index the InvertedIndex
 	 * @param minions the WorkQueue
 	 */
 	public WebCrawler(ThreadSafeInvertedIndex index, WorkQueue minions) {
+		this(index, minions, false);
+	}
+	
+	/**
+	 * Initializes index and minions
+	 * @param index the InvertedIndex
+	 * @param minions the WorkQueue
+	 * @param bloom true to remember the urls seen in a Bloom filter, for very large crawls
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex index, WorkQueue minions, boolean bloom) {
+		this(index, minions, bloom, HostScheduler.UNLIMITED, 0);
+	}
+	
+	/**
+	 * Initializes index and minions, and how politely each host is crawled
+	 * @param index the InvertedIndex
+	 * @param minions the WorkQueue
+	 * @param bloom true to remember the urls seen in a Bloom filter, for very large crawls
+	 * @param perHost the most pages fetched from one host at once
+	 * @param delay the least milliseconds between starting two fetches from one host
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex index, WorkQueue minions, boolean bloom, int perHost, long delay) {
+		this(index, minions, bloom, perHost, delay, null);
+	}
+	
+	/**
+	 * Initializes index and minions, how politely each host is crawled, and
+	 * how pages are fetched
+	 * @param index the InvertedIndex
+	 * @param minions the WorkQueue
+	 * @param bloom true to remember the urls seen in a Bloom filter, for very large crawls
+	 * @param perHost the most pages fetched from one host at once
+	 * @param delay the least milliseconds between starting two fetches from one host
+	 * @param fetcher fetches pages without blocking the minions, which then only
+	 * index them, or null to fetch each page on a minion
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex index, WorkQueue minions, boolean bloom, int perHost, long delay,
+			AsyncFetcher fetcher) {
+		this(index, minions, bloom, perHost, delay, fetcher, null);
+	}
+	
+	/**
+	 * Initializes index and minions, how politely each host is crawled, and
+	 * how pages are fetched
+	 * @param index the InvertedIndex
+	 * @param minions the WorkQueue
+	 * @param bloom true to remember the urls seen in a Bloom filter, for very large crawls
+	 * @param perHost the most pages fetched from one host at once
+	 * @param delay the least milliseconds between starting two fetches from one host
+	 * @param fetcher fetches pages without blocking the minions, which then only
+	 * index them, or null
+	 * @param fetchers runs blocking fetches when there is no fetcher, such as
+	 * {@link VirtualThreads#newPerTaskExecutor()}, so the minions only index
+	 * pages, or null to fetch each page on a minion
+	 */
+	public WebCrawler(ThreadSafeInvertedIndex index, WorkQueue minions, boolean bloom, int perHost, long delay,
+			AsyncFetcher fetcher, Executor fetchers) {
 		this.index = index;
-		urls = new HashSet<String>();
 		this.minions = minions;
+		this.adder = new BulkAdder(index);
+		this.bloom = bloom;
+		this.perHost = perHost;
+		this.delay = delay;
+		this.fetcher = fetcher;
+		this.fetchers = fetchers;
+		this.frontier = new CrawlFrontier(0, bloom);
+		this.scheduler = new HostScheduler(this::crawl, perHost, delay);
 	}
 	/**
-	 * Initializes seed and limit. Called in driver
+	 * Initializes seed and limit. Called in driver. Pages are staged per worker
+	 * and added to the index in batches, all of them once the crawl is done.
 	 * @param seed the original URL containing all links
 	 * @param limit the total links to be parsed
 	 */
 	public void seedCrawl(URL seed, int limit) {
-		this.limit = limit;
-		checkCrawl(seed.toString());
-		minions.finish();
+		frontier = new CrawlFrontier(limit, bloom);
+		scheduler = new HostScheduler(this::crawl, perHost, delay);
+		checkCrawl(seed.toString(), 0);
+		scheduler.await();
+		adder.flushAll();
 	}
 	/**
-	 * Adds new URLs to the HashSet urls and then create a new work minion for 
-	 * the url
+	 * Admits a url to the frontier, unless it was seen or the limit is
+	 * reached, and then schedules it to be crawled
 	 * @param url the url to be processed
 	 */
 	public void checkCrawl(String url) {
-		if(!urls.contains(url)) {
-			urls.add(url);
-			minions.execute(new CrawlMinion(url));
+		checkCrawl(url, 0);
+	}
+	/**
+	 * Admits a url to the frontier and schedules it with its host, which
+	 * crawls it once the host is free
+	 * @param url the url to be processed
+	 * @param depth the number of links followed from the seed to the url
+	 */
+	private void checkCrawl(String url, int depth) {
+		CrawlFrontier.Entry entry = frontier.offer(url, depth);
+		if(entry != null) {
+			scheduler.add(entry);
 		}
 	}
 	/**
@@ -51,40 +137,173 @@ public class WebCrawler {
 	public void addURLWords(String url, String html, InvertedIndex index)
 	{
 		int position = 1;
-		Stemmer cleaner = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
 		String[] stemmedwords = TextParser.parse(html);
 		for(String stems : stemmedwords) {
-			index.addWord(cleaner.stem(stems).toString(), url, position++);
+			index.addWord(StemCache.stem(stems), url, position++);
 		}
 	}
 	
-	private class CrawlMinion implements Runnable
-	{
-		private String url;
-		public CrawlMinion(String url)
-		{
-			this.url = url;
-		}
-
-		@Override
-		public void run() {
+	/**
+	 * Starts crawling a url. The page is streamed and indexed on a work
+	 * minion, streamed on the fetchers and indexed in batches on the work
+	 * minions, or fetched whole by the fetcher and indexed on a work minion.
+	 * Run by the scheduler.
+	 * @param next the url and its depth from the seed
+	 * @return a future completed once the page is indexed and its links checked
+	 */
+	private CompletableFuture<Void> crawl(CrawlFrontier.Entry next) {
+		if(fetcher != null) {
 			try {
-				InvertedIndex local = new InvertedIndex();
-				String html = HTMLFetcher.fetchHTML(url, 3);
-				String html2 = HTMLCleaner.stripHTML(html);
-				addURLWords(url, html2, local);
-				index.addAll(local);
-				URL url2 = new URL(url);
-				ArrayList<URL> links = LinkParser.listLinks(url2, html);
-				for(URL absolute : links) {
-					if(urls.size() < limit) {
-						checkCrawl(absolute.toString());
-					}
-				}
+				return fetcher.fetchHTML(new URL(next.getUrl()), 3)
+						.thenAcceptAsync(html -> process(next, html), minions::execute)
+						.exceptionally(e -> failed(next, e));
 			} catch(IOException e) {
 				e.printStackTrace();
+				return CompletableFuture.completedFuture(null);
+			}
+		}
+		if(fetchers == null) {
+			return CompletableFuture.runAsync(() -> stream(next, new PageWords(next.getUrl(), false)), minions::execute)
+					.exceptionally(e -> failed(next, e));
+		}
+		return CompletableFuture.runAsync(() -> stream(next, new PageWords(next.getUrl(), true)), fetchers)
+				.exceptionally(e -> failed(next, e));
+	}
+	
+	/**
+	 * reports a page that could not be crawled
+	 * @param next the url and its depth from the seed
+	 * @param e the error
+	 * @return null
+	 */
+	private static Void failed(CrawlFrontier.Entry next, Throwable e) {
+		System.out.println("error fetching " + next.getUrl() + ": " + e.getMessage());
+		return null;
+	}
+	
+	/**
+	 * Fetches a url and splits its html into words and links as it arrives,
+	 * without holding the html or its words. Each word is given to the page's
+	 * words and each link checked as soon as it is read.
+	 * @param next the url and its depth from the seed
+	 * @param words takes the words of the page, and is finished once the page ends
+	 */
+	private void stream(CrawlFrontier.Entry next, PageWords words) {
+		try(HttpStream response = HttpStream.open(new URL(next.getUrl()), 3)) {
+			if(!response.isHTML()) {
+				return;
 			}
-		}		
+			new HTMLTokenizer(new URL(next.getUrl()), words,
+					link -> checkCrawl(link.toString(), next.getDepth() + 1)).tokenize(response.getReader());
+			words.finish();
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Adds the words of a page fetched whole to the index and checks its links.
+	 * @param next the url and its depth from the seed
+	 * @param html the html of the page, or null if it was not html
+	 */
+	private void process(CrawlFrontier.Entry next, String html) {
+		if(html == null) {
+			return;
+		}
+		String url = next.getUrl();
+		try {
+			InvertedIndex local = new InvertedIndex();
+			String html2 = HTMLCleaner.stripHTML(html);
+			addURLWords(url, html2, local);
+			adder.add(local);
+			URL url2 = new URL(url);
+			ArrayList<URL> links = LinkParser.listLinks(url2, html);
+			for(URL absolute : links) {
+				checkCrawl(absolute.toString(), next.getDepth() + 1);
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Stems the words of a streamed page into the index as they arrive. On a
+	 * minion each word goes straight into one local index of the page, which is
+	 * added once the page ends. On the fetchers the words are handed to the
+	 * minions in batches of at most {@link #BATCH}, each stemmed into a local
+	 * index of its own, and the next batch is only handed off once the last
+	 * one is indexed, so a page of any size holds at most two batches.
+	 */
+	private class PageWords implements Consumer<String> {
+		private final String url;
+		private final boolean batched;
+		private InvertedIndex local;
+		private ArrayList<String> batch;
+		private int position;
+		private int start;
+		private CompletableFuture<Void> pending;
+		
+		/**
+		 * Initializes the words of a page
+		 * @param url the location of the page
+		 * @param batched true to hand the words to the minions in batches
+		 */
+		private PageWords(String url, boolean batched) {
+			this.url = url;
+			this.batched = batched;
+			this.local = new InvertedIndex();
+			this.batch = new ArrayList<String>();
+			this.position = 1;
+			this.start = 1;
+			this.pending = CompletableFuture.completedFuture(null);
+		}
+		
+		@Override
+		public void accept(String word) {
+			if(!batched) {
+				local.addWord(StemCache.stem(word), url, position++);
+				return;
+			}
+			batch.add(word);
+			position++;
+			if(batch.size() == BATCH) {
+				handOff();
+			}
+		}
+		
+		/**
+		 * adds the words once the page ends, waiting for the last batch
+		 */
+		private void finish() {
+			if(!batched) {
+				adder.add(local);
+				return;
+			}
+			handOff();
+			pending.join();
+		}
+		
+		/**
+		 * hands the current batch to a minion once the last one is indexed
+		 */
+		private void handOff() {
+			if(batch.isEmpty()) {
+				return;
+			}
+			ArrayList<String> words = batch;
+			int first = start;
+			batch = new ArrayList<String>();
+			start = position;
+			pending.join();
+			pending = CompletableFuture.runAsync(() -> {
+				InvertedIndex part = new InvertedIndex();
+				int next = first;
+				for(String word : words) {
+					part.addWord(StemCache.stem(word), url, next++);
+				}
+				adder.add(part);
+			}, minions::execute);
+		}
 	}
 	
 }